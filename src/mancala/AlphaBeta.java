@@ -0,0 +1,117 @@
+package mancala;
+
+/**
+ * Depth-limited negamax search with alpha-beta pruning and a transposition table.
+ * Values are mancala differences for the player to move; positions where the game has
+ * ended are exact, other leaves count the mancalas only. With a depth longer than any game
+ * the search solves the position. After an extra turn the same player moves again, so the
+ * value is not negated. The table has a fixed number of entries and entries are replaced,
+ * so memory stays constant however long the search runs.
+ * An AlphaBeta keeps its boards and table and must only be used by one thread at a time.
+ * @author TeamNemo
+ *
+ */
+public class AlphaBeta {
+	private static final int EXACT = 0;
+	private static final int LOWER = 1;
+	private static final int UPPER = 2;
+	private MancalaRules rules;
+	private long[] keys;
+	private long[] entries; // value (32 bits), depth (16), bound (2)
+	private int mask;
+	private int[][] boards;
+	private long nodes;
+
+	/**
+	 * Constructor for the AlphaBeta class
+	 * @param rules the rules moves are played by
+	 * @param tableBits the table has 2^tableBits entries of 16 bytes
+	 */
+	public AlphaBeta(MancalaRules rules, int tableBits) {
+		this.rules = rules;
+		keys = new long[1 << tableBits];
+		entries = new long[1 << tableBits];
+		mask = (1 << tableBits) - 1;
+		boards = new int[0][];
+	}
+
+	/**
+	 * Searches a position
+	 * @param board the position, not changed
+	 * @param playerA true if player A is to move
+	 * @param depth the number of moves to look ahead
+	 * @return the value for the player to move
+	 */
+	public int search(int[] board, boolean playerA, int depth) {
+		if (boards.length <= depth) {
+			boards = new int[depth + 1][board.length];
+		}
+		System.arraycopy(board, 0, boards[depth], 0, board.length);
+		return negamax(playerA, depth, -Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the number of positions visited since the AlphaBeta was created
+	 * @return the number of positions
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	private int negamax(boolean playerA, int depth, int alpha, int beta) {
+		nodes++;
+		int[] board = boards[depth];
+		int own = playerA ? rules.getMancalaA() : rules.getMancalaB();
+		int opp = playerA ? rules.getMancalaB() : rules.getMancalaA();
+		if (depth == 0 || rules.isGameEnd(board)) {
+			return board[own] - board[opp];
+		}
+		long key = hash(board, playerA);
+		int slot = (int) key & mask;
+		if (keys[slot] == key) {
+			long e = entries[slot];
+			int value = (int) (e >> 32);
+			int bound = (int) e & 3;
+			if (((e >> 2) & 0xFFFF) >= depth) {
+				if (bound == EXACT) return value;
+				if (bound == LOWER && value >= beta) return value;
+				if (bound == UPPER && value <= alpha) return value;
+			}
+		}
+		int start = alpha;
+		int best = -Integer.MAX_VALUE;
+		int[] next = boards[depth - 1];
+		int first = rules.firstPit(playerA);
+		// Moves that end in the own mancala first: they tend to be best and cut the most.
+		for (int pass = 0; pass < 2 && alpha < beta; pass++) {
+			for (int i = first + rules.getPits() - 1; i >= first && alpha < beta; i--) {
+				if (board[i] <= 0) continue;
+				boolean extra = rules.lastPit(board, playerA, i) == own;
+				if (extra != (pass == 0)) continue;
+				System.arraycopy(board, 0, next, 0, board.length);
+				int result = rules.sow(next, playerA, i);
+				int value = (result & MancalaRules.EXTRA_TURN) != 0 ? negamax(playerA, depth - 1, alpha, beta)
+						: -negamax(!playerA, depth - 1, -beta, -alpha);
+				if (value > best) best = value;
+				if (value > alpha) alpha = value;
+			}
+		}
+		int bound = best <= start ? UPPER : best >= beta ? LOWER : EXACT;
+		keys[slot] = key;
+		entries[slot] = ((long) best << 32) | ((long) depth << 2) | bound;
+		return best;
+	}
+
+	/**
+	 * Hashes a position with the player to move; different positions may share a hash,
+	 * which is rare enough with 64 bits to be ignored
+	 */
+	static long hash(int[] board, boolean playerA) {
+		long h = playerA ? 0x9E3779B97F4A7C15L : 0;
+		for (int v : board) {
+			h = (h + v) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return h;
+	}
+}
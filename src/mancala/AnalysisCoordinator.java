@@ -0,0 +1,473 @@
+package mancala;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Searches a position with AlphaBeta on several worker JVMs.
+ * The coordinator expands the first plies itself; every position at the split depth is an
+ * item that one worker searches to the remaining depth. Each worker gets a few items ahead
+ * of time. A worker that runs out takes the newest item queued at the busiest worker, and
+ * the coordinator cancels it there; if the first worker already started it, whichever
+ * result arrives first is used. When a worker dies, its items are queued again, and
+ * workers started by the coordinator are replaced. The item values are combined by
+ * negamax over the expanded plies.
+ * Usage: AnalysisCoordinator [-stones N] [-pits N] [-variant kalah|oware] [-nocapture]
+ * [-depth D] [-split K] [-workers N] [-xmx SIZE] [-table BITS] [-port P]
+ * @author TeamNemo
+ *
+ */
+public class AnalysisCoordinator {
+	static final int ITEM = 1;
+	static final int CANCEL = 2;
+	static final int SHUTDOWN = 3;
+	static final int RESULT = 1;
+	private static final int PREFETCH = 2;
+	private static final int MAX_RESPAWNS = 8;
+	private MancalaRules rules;
+	private int tableBits;
+	private Deque<Item> queue;
+	private List<Connection> connections;
+	private int remaining;
+	private long nodes;
+	private int steals;
+	private int requeued;
+	private int failures;
+
+	/**
+	 * A position at the split depth, searched by a worker
+	 */
+	private static class Item {
+		int id;
+		int[] board;
+		boolean playerA;
+		int depth;
+		boolean done;
+		int value;
+	}
+
+	/**
+	 * A position the coordinator expanded itself
+	 */
+	private static class Node {
+		boolean playerA;
+		int value; // for game ends
+		Item item;
+		List<Node> children = new ArrayList<>();
+		List<Boolean> extra = new ArrayList<>();
+		int[] moves;
+	}
+
+	/**
+	 * A connected worker and the items sent to it that have no result yet
+	 */
+	private class Connection implements Runnable {
+		Socket socket;
+		DataOutputStream out;
+		DataInputStream in;
+		Deque<Item> assigned = new ArrayDeque<>();
+		long pid;
+		Process process;
+		int finished;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			pid = in.readLong();
+			synchronized (AnalysisCoordinator.this) {
+				process = starting.remove(pid);
+			}
+			out.writeByte(rules.getPits());
+			out.writeByte(rules.getVariant().ordinal());
+			out.writeBoolean(rules.isCapture());
+			out.writeByte(tableBits);
+			out.flush();
+		}
+
+		void send(Item item) throws IOException {
+			out.writeByte(ITEM);
+			out.writeInt(item.id);
+			out.writeByte(item.playerA ? 1 : 0);
+			out.writeShort(item.depth);
+			for (int v : item.board) {
+				out.writeShort(v);
+			}
+			out.flush();
+		}
+
+		void cancel(Item item) throws IOException {
+			out.writeByte(CANCEL);
+			out.writeInt(item.id);
+			out.flush();
+		}
+
+		/**
+		 * Reads results until the worker goes away
+		 */
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					if (in.readByte() != RESULT) throw new IOException("Unexpected message");
+					int id = in.readInt();
+					int value = in.readInt();
+					long n = in.readLong();
+					finish(this, id, value, n);
+				}
+			} catch (IOException e) {
+				lost(this);
+			}
+		}
+	}
+
+	private List<Item> items;
+	private ServerSocket server;
+	private List<String> workerCommand;
+	private Map<Long, Process> starting; // started workers that have not connected yet
+	private int respawns;
+	private long lastProgress;
+
+	/**
+	 * Constructor for the AnalysisCoordinator class
+	 * @param rules the rules moves are played by
+	 * @param tableBits the size of the workers' transposition tables, 2^tableBits entries
+	 * @param port the loopback port workers connect to, 0 for any
+	 * @throws IOException if the port cannot be opened
+	 */
+	public AnalysisCoordinator(MancalaRules rules, int tableBits, int port) throws IOException {
+		this.rules = rules;
+		this.tableBits = tableBits;
+		queue = new ArrayDeque<>();
+		connections = new ArrayList<>();
+		items = new ArrayList<>();
+		starting = new HashMap<>();
+		server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		acceptWorkers();
+	}
+
+	/**
+	 * Returns the port workers connect to
+	 * @return the port on the loopback interface
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Starts worker JVMs with the classpath of this one; they are replaced when they die
+	 * @param count the number of workers
+	 * @param maxHeap the -Xmx of each worker, null for the default
+	 * @throws IOException if a worker cannot be started
+	 */
+	public void startWorkers(int count, String maxHeap) throws IOException {
+		workerCommand = new ArrayList<>();
+		workerCommand.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		if (maxHeap != null) workerCommand.add("-Xmx" + maxHeap);
+		workerCommand.add("-cp");
+		workerCommand.add(System.getProperty("java.class.path"));
+		workerCommand.add(AnalysisWorker.class.getName());
+		workerCommand.add(Integer.toString(getPort()));
+		for (int i = 0; i < count; i++) {
+			startWorker();
+		}
+	}
+
+	private void startWorker() throws IOException {
+		Process process = new ProcessBuilder(workerCommand).inheritIO().start();
+		synchronized (this) {
+			starting.put(process.pid(), process);
+		}
+	}
+
+	/**
+	 * Accepts the started workers and workers started by hand, e.g. with other heap settings
+	 */
+	private void acceptWorkers() {
+		Thread t = new Thread(() -> {
+			while (!server.isClosed()) {
+				try {
+					add(new Connection(server.accept()));
+				} catch (IOException e) {
+					// A worker that failed its handshake, or the port was closed at the end.
+				}
+			}
+		}, "AnalysisCoordinator accept");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private void add(Connection c) {
+		synchronized (this) {
+			connections.add(c);
+			dispatch();
+		}
+		Thread t = new Thread(c, "AnalysisCoordinator worker " + c.pid);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Fills the prefetch of every worker, from the queue or by stealing. Called with the lock held.
+	 */
+	private void dispatch() {
+		for (Connection c : new ArrayList<>(connections)) {
+			while (c.assigned.size() < PREFETCH) {
+				Item item = queue.pollFirst();
+				Connection victim = null;
+				if (item == null) {
+					// Only an idle worker steals, so two workers never pass an item back and forth.
+					if (!c.assigned.isEmpty()) break;
+					// Steal the newest item of the worker with the most waiting, if it has more than one.
+					for (Connection o : connections) {
+						if (o != c && o.assigned.size() > 1 && (victim == null || o.assigned.size() > victim.assigned.size())) {
+							victim = o;
+						}
+					}
+					if (victim == null) break;
+					item = victim.assigned.pollLast();
+					steals++;
+				}
+				try {
+					if (victim != null) victim.cancel(item);
+				} catch (IOException e) {
+					// The victim's reader notices and cleans up.
+				}
+				try {
+					c.send(item);
+					c.assigned.add(item);
+				} catch (IOException e) {
+					queue.addFirst(item);
+					break;
+				}
+			}
+		}
+	}
+
+	private synchronized void finish(Connection c, int id, int value, long n) {
+		Item item = items.get(id);
+		c.assigned.remove(item);
+		c.finished++;
+		nodes += n;
+		lastProgress = System.nanoTime();
+		if (item.done) return;
+		item.done = true;
+		item.value = value;
+		remaining--;
+		// Another worker may still hold it after a steal raced with the start of the search.
+		for (Connection o : connections) {
+			if (o != c && o.assigned.remove(item)) {
+				try {
+					o.cancel(item);
+				} catch (IOException e) {
+					// Its reader cleans up.
+				}
+			}
+		}
+		dispatch();
+		notifyAll();
+	}
+
+	private void lost(Connection c) {
+		boolean respawn;
+		synchronized (this) {
+			if (!connections.remove(c)) return;
+			failures++;
+			for (Item item : c.assigned) {
+				if (!item.done) {
+					queue.addFirst(item);
+					requeued++;
+				}
+			}
+			c.assigned.clear();
+			respawn = remaining > 0 && c.process != null && respawns < MAX_RESPAWNS;
+			if (respawn) respawns++;
+			dispatch();
+			notifyAll();
+		}
+		if (remaining > 0) {
+			System.err.println("Worker " + c.pid + " lost, its items were queued again");
+		}
+		try {
+			c.socket.close();
+		} catch (IOException e) {
+			// Already gone.
+		}
+		if (respawn) {
+			try {
+				startWorker();
+			} catch (IOException e) {
+				System.err.println("Cannot replace worker: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Expands a position to the split depth and queues the positions there
+	 */
+	private Node expand(int[] board, boolean playerA, int split, int depth) {
+		Node node = new Node();
+		node.playerA = playerA;
+		int own = playerA ? rules.getMancalaA() : rules.getMancalaB();
+		int opp = playerA ? rules.getMancalaB() : rules.getMancalaA();
+		if (rules.isGameEnd(board) || depth == 0) {
+			node.value = board[own] - board[opp];
+			return node;
+		}
+		if (split == 0) {
+			Item item = new Item();
+			item.id = items.size();
+			item.board = board;
+			item.playerA = playerA;
+			item.depth = depth;
+			items.add(item);
+			queue.add(item);
+			node.item = item;
+			return node;
+		}
+		int first = rules.firstPit(playerA);
+		node.moves = new int[rules.getPits()];
+		for (int i = first; i < first + rules.getPits(); i++) {
+			if (board[i] <= 0) continue;
+			int[] next = board.clone();
+			boolean extra = (rules.sow(next, playerA, i) & MancalaRules.EXTRA_TURN) != 0;
+			node.moves[node.children.size()] = i;
+			node.children.add(expand(next, extra ? playerA : !playerA, split - 1, depth - 1));
+			node.extra.add(extra);
+		}
+		return node;
+	}
+
+	private int value(Node node) {
+		if (node.item != null) return node.item.value;
+		if (node.children.isEmpty()) return node.value;
+		int best = -Integer.MAX_VALUE;
+		for (int c = 0; c < node.children.size(); c++) {
+			int v = value(node.children.get(c));
+			best = Math.max(best, node.extra.get(c) ? v : -v);
+		}
+		return best;
+	}
+
+	/**
+	 * Searches a position on the workers and waits for the result
+	 * @param board the position
+	 * @param playerA true if player A is to move
+	 * @param depth the number of moves to look ahead
+	 * @param split the plies expanded by the coordinator
+	 * @return the value of each move of the root, in the order of the pits; 0 for illegal moves
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IOException if all workers are lost and none can be started
+	 */
+	public int[] search(int[] board, boolean playerA, int depth, int split) throws InterruptedException, IOException {
+		Node root;
+		synchronized (this) {
+			root = expand(board.clone(), playerA, Math.max(1, split), depth);
+			remaining = queue.size();
+			lastProgress = System.nanoTime();
+			dispatch();
+			while (remaining > 0) {
+				wait(1000);
+				if (connections.isEmpty() && starting.isEmpty() && System.nanoTime() - lastProgress > 30e9) {
+					throw new IOException("No workers left");
+				}
+			}
+		}
+		int[] values = new int[rules.getPits()];
+		int first = rules.firstPit(playerA);
+		for (int c = 0; c < root.children.size(); c++) {
+			int v = value(root.children.get(c));
+			values[root.moves[c] - first] = root.extra.get(c) ? v : -v;
+		}
+		return values;
+	}
+
+	/**
+	 * Tells the workers to exit and closes the port
+	 */
+	public synchronized void shutdown() {
+		for (Connection c : connections) {
+			try {
+				c.out.writeByte(SHUTDOWN);
+				c.out.flush();
+			} catch (IOException e) {
+				// Already gone.
+			}
+		}
+		try {
+			server.close();
+		} catch (IOException e) {
+			// Nothing to do.
+		}
+	}
+
+	/**
+	 * Runs a search
+	 * @param args the command line, see the class description
+	 * @throws Exception if the search fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int stones = 4;
+		int pits = 6;
+		MancalaRules.Variant variant = MancalaRules.Variant.KALAH;
+		boolean capture = true;
+		int depth = 14;
+		int split = 4;
+		int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		String xmx = null;
+		int tableBits = 22;
+		int port = 0;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-stones": stones = Integer.parseInt(args[++i]); break;
+			case "-pits": pits = Integer.parseInt(args[++i]); break;
+			case "-variant": variant = MancalaRules.Variant.valueOf(args[++i].toUpperCase()); break;
+			case "-nocapture": capture = false; break;
+			case "-depth": depth = Integer.parseInt(args[++i]); break;
+			case "-split": split = Integer.parseInt(args[++i]); break;
+			case "-workers": workers = Integer.parseInt(args[++i]); break;
+			case "-xmx": xmx = args[++i]; break;
+			case "-table": tableBits = Integer.parseInt(args[++i]); break;
+			case "-port": port = Integer.parseInt(args[++i]); break;
+			default:
+				System.err.println("Usage: AnalysisCoordinator [-stones N] [-pits N] [-variant kalah|oware] [-nocapture]"
+						+ " [-depth D] [-split K] [-workers N] [-xmx SIZE] [-table BITS] [-port P]");
+				System.exit(2);
+			}
+		}
+		MancalaRules rules = MancalaRules.of(pits, variant, capture);
+		AnalysisCoordinator coordinator = new AnalysisCoordinator(rules, tableBits, port);
+		System.out.println("Listening for workers on port " + coordinator.getPort());
+		coordinator.startWorkers(workers, xmx);
+		int[] board = new int[rules.getSize()];
+		rules.init(board, stones);
+		// DataModel starts with player B.
+		long start = System.nanoTime();
+		int[] values = coordinator.search(board, false, depth, split);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int first = rules.firstPit(false);
+		for (int p = 0; p < rules.getPits(); p++) {
+			if (board[first + p] > 0) System.out.printf("B%d %+d%n", p, values[p]);
+		}
+		synchronized (coordinator) {
+			System.out.printf("%d items, %d nodes in %.1f s (%.1f Mnodes/s), %d steals, %d requeued, %d workers lost%n",
+					coordinator.items.size(), coordinator.nodes, seconds, coordinator.nodes / seconds / 1e6,
+					coordinator.steals, coordinator.requeued, coordinator.failures);
+		}
+		coordinator.shutdown();
+	}
+}
@@ -0,0 +1,335 @@
+package mancala;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A tree of explored variations from a starting position.
+ * A node only stores its parent, its move and the player to move; the nodes are kept in
+ * parallel arrays, so a node costs a few bytes no matter how large the board is.
+ * Positions are rebuilt by replaying moves from the nearest cached ancestor, and recently
+ * used positions are kept in an LRU cache of bounded size.
+ * A tree can drive a DataModel: selecting a node shows its position, and moves and
+ * undos made on the game extend the tree or step back in it. A position the tree cannot
+ * reach that way becomes the root of a new tree.
+ * @author TeamNemo
+ *
+ */
+public class AnalysisTree implements ChangeListener {
+	public static final int ROOT = 0;
+	private static final int CHECKPOINT_DEPTH = 16;
+	private MancalaRules rules;
+	private int[] rootBoard;
+	private int[] parent;
+	private int[] firstChild;
+	private int[] nextSibling;
+	private byte[] move;
+	private boolean[] playerA; // the player to move in the position of the node
+	private int size;
+	private Map<Integer, int[]> cache;
+	private int current;
+	private DataModel game;
+	private int gameResetCount; // the history of the game that has been followed
+	private int gameHistorySize; // the inputs of that history that have been replayed
+
+	/**
+	 * Constructor for the AnalysisTree class
+	 * @param rules the rules moves are played by
+	 * @param board the starting position, copied
+	 * @param isPlayerA true if player A is to move in the starting position
+	 * @param cacheSize the number of positions kept besides the starting position
+	 */
+	public AnalysisTree(MancalaRules rules, int[] board, boolean isPlayerA, int cacheSize) {
+		this.rules = rules;
+		parent = new int[64];
+		firstChild = new int[64];
+		nextSibling = new int[64];
+		move = new byte[64];
+		playerA = new boolean[64];
+		cache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		reset(board, isPlayerA);
+	}
+
+	/**
+	 * Drops every node and starts over from a new root
+	 * @param board the starting position, copied
+	 * @param isPlayerA true if player A is to move in the starting position
+	 */
+	private void reset(int[] board, boolean isPlayerA) {
+		rootBoard = board.clone();
+		size = 0;
+		cache.clear();
+		add(-1, 0, isPlayerA);
+		current = ROOT;
+	}
+
+	/**
+	 * Creates a tree that starts at the current position of a 6-pit Kalah game
+	 * @param game the game
+	 * @param cacheSize the number of positions kept besides the starting position
+	 * @return the tree
+	 */
+	public static AnalysisTree of(DataModel game, int cacheSize) {
+		return new AnalysisTree(MancalaRules.KALAH, game.getBoard(), game.getIsPlayerA(), cacheSize);
+	}
+
+	private int add(int from, int pit, boolean isPlayerA) {
+		if (size == parent.length) {
+			int n = size * 2;
+			parent = Arrays.copyOf(parent, n);
+			firstChild = Arrays.copyOf(firstChild, n);
+			nextSibling = Arrays.copyOf(nextSibling, n);
+			move = Arrays.copyOf(move, n);
+			playerA = Arrays.copyOf(playerA, n);
+		}
+		int node = size++;
+		parent[node] = from;
+		firstChild[node] = -1;
+		nextSibling[node] = -1;
+		move[node] = (byte) pit;
+		playerA[node] = isPlayerA;
+		if (from >= 0) {
+			// Keep the children in the order they were explored.
+			int last = firstChild[from];
+			if (last < 0) {
+				firstChild[from] = node;
+			} else {
+				while (nextSibling[last] >= 0) last = nextSibling[last];
+				nextSibling[last] = node;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Plays a move from the position of a node
+	 * @param node the node to play from
+	 * @param pit the board index of the pit to sow
+	 * @return the child for the move, an existing one if the move was explored before; -1 if the move is illegal
+	 */
+	public int play(int node, int pit) {
+		for (int c = firstChild[node]; c >= 0; c = nextSibling[c]) {
+			if (move[c] == pit) return c;
+		}
+		int[] board = position(node);
+		if (rules.isGameEnd(board) || !rules.isLegal(board, playerA[node], pit)) return -1;
+		int[] next = board.clone();
+		int result = rules.sow(next, playerA[node], pit);
+		int child = add(node, pit, (result & MancalaRules.EXTRA_TURN) != 0 ? playerA[node] : !playerA[node]);
+		cache.put(child, next);
+		return child;
+	}
+
+	/**
+	 * Returns the position of a node, from the cache or replayed from the nearest cached ancestor
+	 * The array is shared with the cache and must not be changed.
+	 */
+	private int[] position(int node) {
+		if (node == ROOT) return rootBoard;
+		int[] board = cache.get(node);
+		if (board != null) return board;
+		int[] path = new int[16];
+		int depth = 0;
+		int n = node;
+		int[] base = null;
+		while (n != ROOT && (base = cache.get(n)) == null) {
+			if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+			path[depth++] = n;
+			n = parent[n];
+		}
+		board = (n == ROOT ? rootBoard : base).clone();
+		for (int d = depth - 1; d >= 0; d--) {
+			int child = path[d];
+			rules.sow(board, playerA[parent[child]], move[child]);
+			if (d > 0 && d % CHECKPOINT_DEPTH == 0) {
+				// Keep a few positions along a long line so the next walk up is short.
+				cache.put(child, board.clone());
+			}
+		}
+		cache.put(node, board);
+		return board;
+	}
+
+	/**
+	 * Returns the position of a node
+	 * @param node the node
+	 * @return a copy of the board
+	 */
+	public int[] getBoard(int node) {
+		return position(node).clone();
+	}
+
+	/**
+	 * Returns the player to move in the position of a node
+	 * @param node the node
+	 * @return true if player A is to move
+	 */
+	public boolean isPlayerA(int node) {
+		return playerA[node];
+	}
+
+	/**
+	 * Returns the parent of a node
+	 * @param node the node
+	 * @return the parent, -1 for the root
+	 */
+	public int getParent(int node) {
+		return parent[node];
+	}
+
+	/**
+	 * Returns the move that leads from the parent to a node
+	 * @param node the node, not the root
+	 * @return the board index of the pit sown
+	 */
+	public int getMove(int node) {
+		return move[node];
+	}
+
+	/**
+	 * Returns the children of a node in the order they were explored
+	 * @param node the node
+	 * @return the children
+	 */
+	public int[] getChildren(int node) {
+		int n = 0;
+		for (int c = firstChild[node]; c >= 0; c = nextSibling[c]) n++;
+		int[] children = new int[n];
+		n = 0;
+		for (int c = firstChild[node]; c >= 0; c = nextSibling[c]) children[n++] = c;
+		return children;
+	}
+
+	/**
+	 * Returns the moves from the root to a node
+	 * @param node the node
+	 * @return the board indexes of the pits sown, in order
+	 */
+	public int[] getLine(int node) {
+		int depth = 0;
+		for (int n = node; n != ROOT; n = parent[n]) depth++;
+		int[] line = new int[depth];
+		for (int n = node; n != ROOT; n = parent[n]) line[--depth] = move[n];
+		return line;
+	}
+
+	/**
+	 * Returns the number of nodes
+	 * @return the number of nodes including the root
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the selected node
+	 * @return the node shown on the attached game
+	 */
+	public int getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Shows the positions of selected nodes on a game and follows the moves made on it
+	 * The game must be played by the same rules as the tree. The tree stops listening to
+	 * the game it was attached to before.
+	 * @param game the game, null to detach
+	 */
+	public void attach(DataModel game) {
+		if (this.game != null) {
+			this.game.detach(this);
+		}
+		this.game = game;
+		if (game != null) {
+			game.attach(this);
+			gameResetCount = game.getResetCount();
+			gameHistorySize = game.getHistorySize();
+		}
+	}
+
+	/**
+	 * Selects a node and shows its position on the attached game
+	 * @param node the node
+	 */
+	public void select(int node) {
+		current = node;
+		if (game != null) {
+			game.setPosition(position(node), playerA[node]);
+		}
+	}
+
+	/**
+	 * Selects the sibling of the selected node that was explored before or after it
+	 * @param delta -1 for the previous variation, 1 for the next; wraps around
+	 */
+	public void switchBranch(int delta) {
+		if (current == ROOT) return;
+		int[] siblings = getChildren(parent[current]);
+		int i = 0;
+		while (siblings[i] != current) i++;
+		select(siblings[Math.floorMod(i + delta, siblings.length)]);
+	}
+
+	/**
+	 * Extends the tree with moves made on the attached game and steps back on undo.
+	 * Notifications may be coalesced, so every input the game accepted since the last one
+	 * is replayed from its history. If the tree then does not show the board of the game,
+	 * the game has left the tree and its board becomes the new root.
+	 */
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		DataModel source = (DataModel) e.getSource();
+		if (source != game) return;
+		if (game.getResetCount() != gameResetCount) {
+			// The board was set, e.g. by select; the history starts at that board.
+			gameResetCount = game.getResetCount();
+			gameHistorySize = 0;
+			locate(game.getHistoryBoard(), game.getHistoryPlayerA());
+		}
+		int size = game.getHistorySize();
+		for (; gameHistorySize < size; gameHistorySize++) {
+			int op = game.getHistoryInput(gameHistorySize);
+			if (op == GameRecord.UNDO) {
+				// An undo takes back exactly the last move.
+				if (current != ROOT) current = parent[current];
+			} else if (op != GameRecord.NEXT) {
+				int child = play(current, rules.pitIndex(op / 6, op % 6));
+				if (child < 0) {
+					// Legal for the game but not for the tree; the check below starts over.
+					gameHistorySize = size;
+					break;
+				}
+				current = child;
+			}
+		}
+		int[] board = game.getBoard();
+		if (!Arrays.equals(board, position(current))) {
+			// After a move that ended the turn, the next player is to move in the tree.
+			reset(board, game.isTurnEnd() != game.getIsPlayerA());
+		}
+	}
+
+	/**
+	 * Selects the node of a board the game was set to: the selected node, its parent or the root.
+	 * Any other board becomes the root of a new tree.
+	 */
+	private void locate(int[] board, boolean isPlayerA) {
+		if (Arrays.equals(board, position(current))) return;
+		if (current != ROOT && Arrays.equals(board, position(parent[current]))) {
+			current = parent[current];
+		} else if (Arrays.equals(board, rootBoard)) {
+			current = ROOT;
+		} else {
+			reset(board, isPlayerA);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package mancala;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Worker process of AnalysisCoordinator. It connects to the coordinator, receives the
+ * rules and then subtrees to search, and sends back the value and node count of each.
+ * Subtrees are searched in the order they arrive by one AlphaBeta with its own table in
+ * this JVM's heap; subtrees not yet started are dropped when the coordinator cancels them.
+ * Usage: AnalysisWorker port
+ * @author TeamNemo
+ *
+ */
+public class AnalysisWorker {
+	private DataInputStream in;
+	private DataOutputStream out;
+	private LinkedBlockingDeque<int[]> queue; // id, playerA, depth, then the board
+	private MancalaRules rules;
+	private AlphaBeta search;
+
+	/**
+	 * Constructor for the AnalysisWorker class
+	 * @param socket the connection to the coordinator
+	 * @throws IOException if the connection fails
+	 */
+	public AnalysisWorker(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		queue = new LinkedBlockingDeque<>();
+	}
+
+	/**
+	 * Reads the rules, then reads messages while a search thread works through the queue
+	 * @throws IOException if the connection fails
+	 */
+	public void run() throws IOException {
+		out.writeLong(ProcessHandle.current().pid());
+		out.flush();
+		int pits = in.readByte();
+		MancalaRules.Variant variant = MancalaRules.Variant.values()[in.readByte()];
+		boolean capture = in.readBoolean();
+		int tableBits = in.readByte();
+		rules = MancalaRules.of(pits, variant, capture);
+		search = new AlphaBeta(rules, tableBits);
+		Thread searcher = new Thread(this::searchLoop, "AnalysisWorker search");
+		searcher.setDaemon(true);
+		searcher.start();
+		while (true) {
+			int type = in.readByte();
+			if (type == AnalysisCoordinator.ITEM) {
+				int[] item = new int[3 + rules.getSize()];
+				item[0] = in.readInt();
+				item[1] = in.readByte();
+				item[2] = in.readShort();
+				for (int i = 0; i < rules.getSize(); i++) {
+					item[3 + i] = in.readShort();
+				}
+				queue.add(item);
+			} else if (type == AnalysisCoordinator.CANCEL) {
+				int id = in.readInt();
+				queue.removeIf(item -> item[0] == id);
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void searchLoop() {
+		try {
+			int[] board = new int[rules.getSize()];
+			while (true) {
+				int[] item = queue.take();
+				System.arraycopy(item, 3, board, 0, board.length);
+				long nodes = search.getNodes();
+				int value = search.search(board, item[1] == 1, item[2]);
+				synchronized (out) {
+					out.writeByte(AnalysisCoordinator.RESULT);
+					out.writeInt(item[0]);
+					out.writeInt(value);
+					out.writeLong(search.getNodes() - nodes);
+					out.flush();
+				}
+			}
+		} catch (InterruptedException | IOException e) {
+			// The coordinator is gone; the main thread ends the process.
+		}
+	}
+
+	/**
+	 * Runs a worker
+	 * @param args the port of the coordinator on the loopback interface
+	 * @throws IOException if the coordinator cannot be reached
+	 */
+	public static void main(String[] args) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+			new AnalysisWorker(socket).run();
+		} catch (IOException e) {
+			// Connection lost: exit; the coordinator hands our work to the others.
+		}
+		System.exit(0);
+	}
+}
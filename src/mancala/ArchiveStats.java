@@ -0,0 +1,309 @@
+package mancala;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Command line tool that computes statistics over archives of GameRecord lines:
+ * the results by first move, the game length by starting stones, how often a move from
+ * each pit captures or earns another move, and the distribution of the final margin.
+ * Archives are cut into splits at line boundaries and the splits are replayed in parallel
+ * on a fork/join pool. Each split is read as a stream and only keeps its running totals,
+ * so archives of any size are processed with constant memory.
+ * Usage: ArchiveStats [-threads N] [-split MB] archive...
+ * @author TeamNemo
+ *
+ */
+public class ArchiveStats {
+	private static final int MAX_MARGIN = 255;
+
+	/**
+	 * A part of an archive file
+	 */
+	private static class Split {
+		Path file;
+		long start;
+		long end;
+
+		Split(Path file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Running totals; the totals of two splits are merged by adding them
+	 */
+	public static class Stats {
+		long games;
+		long unfinished;
+		long invalid;
+		// By first move: 0..11 like GameRecord moves; wins, draws and losses of the mover.
+		long[][] firstMove = new long[12][3];
+		// By starting stones: games and moves.
+		Map<Integer, long[]> byStones = new TreeMap<>();
+		// By pit: moves, captures and extra turns.
+		long[][] pits = new long[12][3];
+		// Final margin of A over B, offset by MAX_MARGIN.
+		long[] margins = new long[2 * MAX_MARGIN + 1];
+
+		void add(Stats o) {
+			games += o.games;
+			unfinished += o.unfinished;
+			invalid += o.invalid;
+			for (int p = 0; p < 12; p++) {
+				for (int k = 0; k < 3; k++) {
+					firstMove[p][k] += o.firstMove[p][k];
+					pits[p][k] += o.pits[p][k];
+				}
+			}
+			for (Map.Entry<Integer, long[]> e : o.byStones.entrySet()) {
+				long[] s = byStones.computeIfAbsent(e.getKey(), k -> new long[2]);
+				s[0] += e.getValue()[0];
+				s[1] += e.getValue()[1];
+			}
+			for (int m = 0; m < margins.length; m++) {
+				margins[m] += o.margins[m];
+			}
+		}
+
+		/**
+		 * Replays a game on a new DataModel and counts it
+		 */
+		void addGame(GameRecord record) {
+			DataModel game = new DataModel();
+			game.init(record.getStones());
+			int first = -1;
+			int moves = 0;
+			// The last accepted move, the only one an accepted undo can take back.
+			int lastOp = -1;
+			int lastResult = 0;
+			for (int i = 0; i < record.size(); i++) {
+				int op = record.get(i);
+				if (!record.apply(game, i)) continue;
+				if (op == GameRecord.UNDO) {
+					if (lastOp >= 0) {
+						count(lastOp, lastResult, -1);
+						if (--moves == 0) first = -1;
+						lastOp = -1;
+					}
+					continue;
+				}
+				if (op >= GameRecord.NEXT) continue;
+				moves++;
+				if (first < 0) first = op;
+				lastOp = op;
+				lastResult = game.getLastMoveResult();
+				count(op, lastResult, 1);
+			}
+			// An undo after the last move may have reopened the game.
+			if (first < 0 || !game.checkGameEnd()) {
+				unfinished++;
+				return;
+			}
+			games++;
+			int margin = game.getMancalaA() - game.getMancalaB();
+			// Moves 0..5 are made by A, 6..11 by B.
+			int forMover = first < 6 ? margin : -margin;
+			firstMove[first][forMover > 0 ? 0 : forMover == 0 ? 1 : 2]++;
+			long[] s = byStones.computeIfAbsent(record.getStones(), k -> new long[2]);
+			s[0]++;
+			s[1] += moves;
+			margins[Math.max(-MAX_MARGIN, Math.min(MAX_MARGIN, margin)) + MAX_MARGIN]++;
+		}
+
+		/**
+		 * Adds a move to the per-pit counts, or takes it out again with delta -1
+		 */
+		private void count(int op, int result, int delta) {
+			pits[op][0] += delta;
+			if ((result & MancalaRules.CAPTURE) != 0) pits[op][1] += delta;
+			if ((result & MancalaRules.EXTRA_TURN) != 0) pits[op][2] += delta;
+		}
+
+		/**
+		 * Writes the report
+		 */
+		void print() {
+			System.out.printf("%d finished games, %d unfinished, %d invalid lines%n", games, unfinished, invalid);
+			System.out.println();
+			System.out.println("first move   games   win%  draw%  loss%");
+			for (int p = 0; p < 12; p++) {
+				long n = firstMove[p][0] + firstMove[p][1] + firstMove[p][2];
+				if (n == 0) continue;
+				System.out.printf("%c%d       %8d %6.1f %6.1f %6.1f%n", p < 6 ? 'A' : 'B', p % 6, n,
+						100.0 * firstMove[p][0] / n, 100.0 * firstMove[p][1] / n, 100.0 * firstMove[p][2] / n);
+			}
+			System.out.println();
+			System.out.println("stones       games  avg moves");
+			for (Map.Entry<Integer, long[]> e : byStones.entrySet()) {
+				long[] s = e.getValue();
+				System.out.printf("%-8d %9d %10.1f%n", e.getKey(), s[0], (double) s[1] / s[0]);
+			}
+			System.out.println();
+			System.out.println("pit          moves capture%  extra%");
+			for (int p = 0; p < 12; p++) {
+				long n = pits[p][0];
+				if (n == 0) continue;
+				System.out.printf("%c%d       %10d %8.1f %7.1f%n", p < 6 ? 'A' : 'B', p % 6, n,
+						100.0 * pits[p][1] / n, 100.0 * pits[p][2] / n);
+			}
+			System.out.println();
+			System.out.println("margin A-B   games");
+			long seen = 0;
+			long[] quantiles = new long[] { games / 10, games / 4, games / 2, games * 3 / 4, games * 9 / 10 };
+			String[] names = { "p10", "p25", "p50", "p75", "p90" };
+			int q = 0;
+			for (int m = 0; m < margins.length; m++) {
+				if (margins[m] == 0) continue;
+				System.out.printf("%+4d     %10d%n", m - MAX_MARGIN, margins[m]);
+				seen += margins[m];
+				while (q < quantiles.length && seen > quantiles[q]) {
+					names[q] += " " + (m - MAX_MARGIN);
+					q++;
+				}
+			}
+			System.out.println(String.join(", ", names));
+		}
+	}
+
+	/**
+	 * Replays a range of splits, halving it until a single split is left
+	 */
+	private static class SplitTask extends RecursiveTask<Stats> {
+		private static final long serialVersionUID = 1L;
+		private List<Split> splits;
+		private int from;
+		private int to;
+
+		SplitTask(List<Split> splits, int from, int to) {
+			this.splits = splits;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Stats compute() {
+			if (to - from == 1) {
+				try {
+					return process(splits.get(from));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			int mid = (from + to) >>> 1;
+			SplitTask left = new SplitTask(splits, from, mid);
+			left.fork();
+			Stats stats = new SplitTask(splits, mid, to).compute();
+			stats.add(left.join());
+			return stats;
+		}
+	}
+
+	/**
+	 * Replays the lines that start within a split. A line crossing the start belongs to the split before.
+	 */
+	private static Stats process(Split split) throws IOException {
+		Stats stats = new Stats();
+		try (FileChannel channel = FileChannel.open(split.file, StandardOpenOption.READ)) {
+			long position = split.start;
+			if (position > 0) {
+				// Start after the end of the line that the previous split finishes.
+				position--;
+			}
+			channel.position(position);
+			InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+			byte[] line = new byte[256];
+			if (split.start > 0) {
+				int c;
+				while ((c = in.read()) >= 0) {
+					position++;
+					if (c == '\n') break;
+				}
+			}
+			while (position < split.end) {
+				int length = 0;
+				int c;
+				while ((c = in.read()) >= 0) {
+					position++;
+					if (c == '\n') break;
+					if (length == line.length) {
+						line = Arrays.copyOf(line, length * 2);
+					}
+					line[length++] = (byte) c;
+				}
+				if (c < 0 && length == 0) break;
+				String text = new String(line, 0, length, StandardCharsets.ISO_8859_1);
+				if (text.isBlank() || text.startsWith("#")) continue;
+				GameRecord record;
+				try {
+					record = GameRecord.parse(text);
+				} catch (IllegalArgumentException e) {
+					stats.invalid++;
+					continue;
+				}
+				stats.addGame(record);
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Runs the tool
+	 * @param args the command line, see the class description
+	 * @throws Exception if the arguments are invalid or an archive cannot be read
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long splitBytes = 32L << 20;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-split")) {
+				splitBytes = Long.parseLong(args[++i]) << 20;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (i == args.length) {
+			System.err.println("Usage: ArchiveStats [-threads N] [-split MB] archive...");
+			System.exit(2);
+		}
+		List<Split> splits = new ArrayList<>();
+		long bytes = 0;
+		for (; i < args.length; i++) {
+			Path file = Paths.get(args[i]);
+			long size = Files.size(file);
+			bytes += size;
+			for (long start = 0; start < size; start += splitBytes) {
+				splits.add(new Split(file, start, Math.min(size, start + splitBytes)));
+			}
+		}
+		long start = System.nanoTime();
+		Stats stats = splits.isEmpty() ? new Stats()
+				: new ForkJoinPool(threads).invoke(new SplitTask(splits, 0, splits.size()));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		stats.print();
+		System.out.println();
+		System.out.printf("%d splits, %.1f MB in %.1f s (%.0f games/s, %.1f MB/s)%n", splits.size(), bytes / 1e6,
+				seconds, (stats.games + stats.unfinished) / seconds, bytes / 1e6 / seconds);
+	}
+}
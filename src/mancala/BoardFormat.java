@@ -10,6 +10,12 @@ import java.awt.Shape;
  */
 public interface BoardFormat {
 
+	/**
+	 * Gets the name of the format shown to the players
+	 * @return the name of the format
+	 */
+	String getName();
+
 	/**
 	 * Gets the shape of the formatted Pit
 	 * @param ps the Pit to be formatted
@@ -28,6 +34,11 @@ public interface BoardFormat {
 	 */
 	int getWidth();
 	
+	/*
+	 * @return the height of the board.
+	 */
+	int getHeight();
+	
 	/*
 	 * @return the left position of mancala A.
 	 */
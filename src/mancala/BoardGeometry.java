@@ -0,0 +1,183 @@
+package mancala;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+
+/**
+ * Everything BoardPanel computes from a BoardFormat: the pit shapes, the hit grid
+ * and the pre-rendered static layer and marble. It is built once per format and kept, so
+ * switching back to a format reuses it.
+ * @author TeamNemo
+ *
+ */
+public class BoardGeometry {
+	private static final int LABEL_SIZE = 100;
+	private BoardFormat format;
+	// Pits indexed like the DataModel board: 0 and 7 are the mancalas.
+	private PitShape[] pits;
+	private HitGrid hitGrid;
+	// Background, labels and pit outlines pre-rendered at device resolution.
+	private BufferedImage layer;
+	private boolean layerValid;
+	private int layerWidth;
+	private int layerHeight;
+	private double layerScaleX;
+	private double layerScaleY;
+	// A single marble pre-rendered at the scale it was last requested for.
+	private BufferedImage marbleSprite;
+	private double marbleScale;
+
+	/**
+	 * Constructor for the BoardGeometry class. Creates the pits of the format and their hit grid.
+	 * @param format the layout and dimensions of the board
+	 */
+	public BoardGeometry(BoardFormat format) {
+		this.format = format;
+		int width = format.getWidth();
+		int mancalaLeft = format.getMancalaLeft();
+		int mancalaTop = format.getMancalaTop();
+		int mancalaWidth = format.getMancalaWidth();
+		int mancalaHeight = format.getMancalaHeight();
+		int pitLeft = format.getPitLeft();
+		int pitTop = format.getPitTop();
+		int pitWidth = format.getPitWidth();
+		int pitHeight = format.getPitHeight();
+		int pitBorderX = format.getPitBorderX();
+		int pitBorderY = format.getPitBorderY();
+		pits = new PitShape[14];
+		pits[0] = new PitShape(mancalaLeft, mancalaTop, mancalaWidth, mancalaHeight);
+		pits[0].setShape(format.formatPits(pits[0]));
+		pits[7] = new PitShape(width - mancalaLeft - mancalaWidth, mancalaTop, mancalaWidth, mancalaHeight);
+		pits[7].setShape(format.formatPits(pits[7]));
+		for (int i = 0; i < 6; i++) {
+			int x = pitLeft + i * (pitWidth + pitBorderX);
+			int y = pitTop;
+			// The top row belongs to player A and runs right to left on the board array.
+			pits[13 - i] = new PitShape(x, y, pitWidth, pitHeight);
+			pits[13 - i].setShape(format.formatPits(pits[13 - i]));
+			pits[i + 1] = new PitShape(x, y + pitHeight + pitBorderY, pitWidth, pitHeight);
+			pits[i + 1].setShape(format.formatPits(pits[i + 1]));
+		}
+		hitGrid = new HitGrid(width, format.getHeight(), pits);
+	}
+
+	/**
+	 * Returns the format this geometry was built from
+	 * @return the board format
+	 */
+	public BoardFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the pits indexed like the DataModel board
+	 * @return the 14 pits, 0 and 7 being the mancalas
+	 */
+	public PitShape[] getPits() {
+		return pits;
+	}
+
+	/**
+	 * Returns the pit at the given point of the board
+	 * @param x the x-coordinate in board format pixels
+	 * @param y the y-coordinate in board format pixels
+	 * @return the board index of the pit, -1 if the point is not on a pit
+	 */
+	public int pitAt(double x, double y) {
+		return hitGrid.pitAt(x, y);
+	}
+
+	/**
+	 * Returns the static layer for the given panel size, rendering it only if the size,
+	 * the device scale or the background image changed since the last call
+	 * @param width the width of the panel
+	 * @param height the height of the panel
+	 * @param scaleX the horizontal device scale (greater than 1 on HiDPI screens)
+	 * @param scaleY the vertical device scale
+	 * @param boardTransform maps board format coordinates to panel coordinates
+	 * @param observer notified when a background image that is still loading becomes available
+	 * @return the layer in device pixels
+	 */
+	public BufferedImage getLayer(int width, int height, double scaleX, double scaleY,
+			AffineTransform boardTransform, ImageObserver observer) {
+		if (layerValid && width == layerWidth && height == layerHeight
+				&& scaleX == layerScaleX && scaleY == layerScaleY) {
+			return layer;
+		}
+		layerWidth = width;
+		layerHeight = height;
+		layerScaleX = scaleX;
+		layerScaleY = scaleY;
+		int w = Math.max(1, (int) Math.ceil(width * scaleX));
+		int h = Math.max(1, (int) Math.ceil(height * scaleY));
+		if (layer == null || layer.getWidth() != w || layer.getHeight() != h) {
+			layer = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		}
+		Graphics2D g = layer.createGraphics();
+		g.setBackground(new Color(0, 0, 0, 0));
+		g.clearRect(0, 0, w, h);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.scale(scaleX, scaleY);
+		g.transform(boardTransform);
+		// The background may still be loading; if so, the observer repaints and the layer is rebuilt.
+		layerValid = g.drawImage(format.backgroundImg(), 0, 0, observer);
+
+		g.setColor(Color.BLUE);
+		drawLabel(g, "A", pits[0]);
+		drawLabel(g, "B", pits[7]);
+
+		for (PitShape p : pits) {
+			p.drawOutline(g);
+		}
+		g.dispose();
+		return layer;
+	}
+
+	/**
+	 * Draws the label of a player centered in the space between the top of the board and a mancala
+	 * @param g the graphics in board format coordinates
+	 * @param label the name of the player
+	 * @param mancala the mancala of the player
+	 */
+	private static void drawLabel(Graphics2D g, String label, PitShape mancala) {
+		// Full size on the built-in formats, smaller where a format leaves less room.
+		int size = Math.min(LABEL_SIZE, Math.min(mancala.getY(), mancala.getWidth()));
+		if (size <= 0) return;
+		Font font = new Font("Futura", Font.BOLD, size);
+		Rectangle2D bounds = font.createGlyphVector(g.getFontRenderContext(), label).getVisualBounds();
+		float x = (float) (mancala.getX() + mancala.getWidth() / 2.0 - bounds.getCenterX());
+		float y = (float) (mancala.getY() / 2.0 - bounds.getCenterY());
+		g.setFont(font);
+		g.drawString(label, x, y);
+	}
+
+	/**
+	 * Returns a marble pre-rendered at the given scale, so that views showing many small
+	 * boards can copy it instead of drawing each marble
+	 * @param scale the size of one board pixel in device pixels
+	 * @return the marble image, drawn from its top left corner like PitShape.drawMarble
+	 */
+	public BufferedImage getMarbleSprite(double scale) {
+		if (marbleSprite != null && scale == marbleScale) {
+			return marbleSprite;
+		}
+		marbleScale = scale;
+		int w = (int) Math.ceil((PitShape.MARBLE_SIZE + 2) * scale) + 1;
+		int h = (int) Math.ceil((PitShape.MARBLE_SIZE - 3) * scale) + 1;
+		marbleSprite = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = marbleSprite.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.scale(scale, scale);
+		// Leave room for the outline stroke around the marble.
+		PitShape.drawMarble(g, 1, 1);
+		g.dispose();
+		return marbleSprite;
+	}
+}
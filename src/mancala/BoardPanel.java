@@ -1,16 +1,26 @@
 package mancala;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.event.MouseMotionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -20,65 +30,87 @@ import javax.swing.event.ChangeListener;
  * @author TeamNemo
  *
  */
-public class BoardPanel extends JPanel implements ChangeListener, MouseListener {
+public class BoardPanel extends JPanel implements ChangeListener, MouseListener, MouseMotionListener {
+	private static final Color HOVER_COLOR = new Color(255, 255, 0, 90);
+	private static final Color LANDING_COLOR = new Color(0, 200, 0);
+	private static final Font METRICS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 13);
 	private DataModel data;
-	private BoardFormat boardFormat;
-	private PitShape[] pitInRowA;
-	private PitShape[] pitInRowB;
-	private PitShape mancalaA;
-	private PitShape mancalaB;
-	private List<PitShape> pits;
+	private BoardGeometry geometry;
+	// Geometry of every format shown so far, reused when switching back.
+	private Map<BoardFormat, BoardGeometry> geometries;
+	private int hoverPit;
+	private int landingPit;
+	private Point mousePosition;
+	private SowingAnimation animation;
+	private int shownMoveCount;
+	private long shownStamp; // the changeStamp of the model when this panel was last notified
+	private boolean animated;
+	// Input that arrived while a move was being animated, applied in order afterwards.
+	private ArrayDeque<Runnable> pendingInput;
+	// Set by a click whose move was accepted and completed by the first paint that shows the move.
+	private Metrics.ClickToPaintEvent clickEvent;
+	private long clickTime;
+	private int clickMoveCount; // the move count the click produced
+	// Maps board format coordinates to panel coordinates.
+	private AffineTransform boardTransform;
 	
 	/**
-	 * Constructor for the BoardPanel class. Creates a board and initializes it to a specific format.
-	 * BoardPanel initializes 6 pits per player
+	 * Constructor for the BoardPanel class. Creates a board without a format yet.
+	 * BoardPanel initializes 6 pits per player once a format is set
+	 * The preferred size is only a default; the board scales to whatever size the panel is given
 	 * @param data The data from the DataModel class 
 	 */
 	public BoardPanel(DataModel data) {
 		setPreferredSize(new Dimension(1280, 500));
 		this.data = data;
-		boardFormat = new GOBoardFormat();
-		pitInRowA = new PitShape[6];
-		pitInRowB = new PitShape[6];
-		pits = new ArrayList<PitShape>();
+		geometries = new HashMap<>();
+		boardTransform = new AffineTransform();
+		hoverPit = -1;
+		landingPit = -1;
+		pendingInput = new ArrayDeque<>();
+		animated = true;
+		shownStamp = changeStamp();
+		addMouseListener(this);
+		addMouseMotionListener(this);
 	}
 
 	/**
-	 * Sets the board format and dimensions 
-	 * Initializes the pit dimensions and adds mouse listener
+	 * Sets the board format, also while a game is running
+	 * The pits of a format are computed the first time it is shown and reused afterwards
 	 * @param format the layout and dimensions of the board 
 	 */
 	public void setFormat(BoardFormat format) {
-		boardFormat = format;
-		int width = format.getWidth();
-		int mancalaLeft = format.getMancalaLeft();
-		int mancalaTop = format.getMancalaTop();
-		int mancalaWidth = format.getMancalaWidth();
-		int mancalaHeight = format.getMancalaHeight();
-		int pitLeft = format.getPitLeft();
-		int pitTop = format.getPitTop();
-		int pitWidth = format.getPitWidth();
-		int pitHeight = format.getPitHeight();
-		int pitBorderX = format.getPitBorderX();
-		int pitBorderY = format.getPitBorderY();
-		mancalaA = new PitShape(mancalaLeft, mancalaTop, mancalaWidth, mancalaHeight);
-		mancalaA.setShape(format.formatPits(mancalaA));
-		mancalaB = new PitShape(width - mancalaLeft - mancalaWidth, mancalaTop, mancalaWidth, mancalaHeight);
-		mancalaB.setShape(format.formatPits(mancalaB));
-		pits.clear();
-		pits.add(mancalaA);
-		pits.add(mancalaB);
-		for (int i = 0; i < 6; i++) {
-			int x = pitLeft + i * (pitWidth + pitBorderX);
-			int y = pitTop;
-			pitInRowA[i] = new PitShape(x, y, pitWidth, pitHeight);
-			pitInRowA[i].setShape(format.formatPits(pitInRowA[i]));
-			pitInRowB[i] = new PitShape(x, y + pitHeight + pitBorderY, pitWidth, pitHeight);
-			pitInRowB[i].setShape(format.formatPits(pitInRowB[i]));
-			pits.add(pitInRowA[i]);
-			pits.add(pitInRowB[i]);
+		if (geometry != null && geometry.getFormat() == format) return;
+		boolean cancelled = animation != null;
+		if (cancelled) {
+			animation.cancel();
+			animation = null;
 		}
-		addMouseListener(this);
+		geometry = geometries.computeIfAbsent(format, BoardGeometry::new);
+		hoverPit = -1;
+		landingPit = -1;
+		updateGame();
+		if (cancelled) {
+			// Input queued behind the cancelled animation would otherwise wait for the next one.
+			SwingUtilities.invokeLater(this::runPendingInput);
+		}
+		repaint();
+	}
+	
+	/**
+	 * Turns the sowing animation on or off; without it every change is shown at once
+	 * @param animated true to animate moves, which is the default
+	 */
+	public void setAnimated(boolean animated) {
+		this.animated = animated;
+	}
+	
+	/**
+	 * Returns the current board format
+	 * @return the board format, null if none has been set
+	 */
+	public BoardFormat getFormat() {
+		return geometry == null ? null : geometry.getFormat();
 	}
 	
 	/**
@@ -86,13 +118,14 @@ public class BoardPanel extends JPanel implements ChangeListener, MouseListener
 	 * Changes the number of marbles in each pit based on the data provided by the model
 	 */
 	public void updateGame() {
+		PitShape[] pits = geometry.getPits();
 		int[] rowA = data.getRowA();
 		int[] rowB = data.getRowB();
-		mancalaA.setMarbles(data.getMancalaA());
-		mancalaB.setMarbles(data.getMancalaB());
+		pits[0].setMarbles(data.getMancalaA());
+		pits[7].setMarbles(data.getMancalaB());
 		for (int i = 0; i < 6; i++) {
-			pitInRowA[i].setMarbles(rowA[i]);
-			pitInRowB[i].setMarbles(rowB[i]);
+			pits[13 - i].setMarbles(rowA[i]);
+			pits[i + 1].setMarbles(rowB[i]);
 		}
 	}
 	
@@ -104,53 +137,280 @@ public class BoardPanel extends JPanel implements ChangeListener, MouseListener
 	 */
 	@Override
 	public void stateChanged(ChangeEvent e) {
+		long stamp = changeStamp();
+		boolean singleInput = stamp == shownStamp + 1;
+		shownStamp = stamp;
+		if (geometry == null) return;
+		if (animation != null) {
+			// The model changed while a move was shown, jump straight to the new state.
+			animation.cancel();
+			animation = null;
+			updateGame();
+			// Not while the model is still notifying its listeners.
+			SwingUtilities.invokeLater(this::runPendingInput);
+		} else if (animated && singleInput && data.getMoveCount() == shownMoveCount + 1) {
+			animation = new SowingAnimation(geometry.getPits(), data.getLastSowOrigin(), data.getLastSowPath(),
+					this, this::finishAnimation);
+			animation.start();
+		} else {
+			updateGame();
+		}
+		shownMoveCount = data.getMoveCount();
+		if (mousePosition != null) {
+			updateHover(mousePosition.x, mousePosition.y);
+		}
+		repaint();
+		if (animation == null && !pendingInput.isEmpty()) {
+			// The change of the previous input is shown; go on with the next one.
+			SwingUtilities.invokeLater(this::runPendingInput);
+		}
+	}
+
+	/**
+	 * Queues an input action behind the move that is currently animated and behind
+	 * input whose change has not been delivered to this panel yet.
+	 * Otherwise the action runs immediately.
+	 * @param action the action that changes the model
+	 */
+	public void queueInput(Runnable action) {
+		pendingInput.add(action);
+		runPendingInput();
+	}
+
+	/**
+	 * Identifies the state of the model by its history: the number of resets and the number
+	 * of inputs since the last one. Every change of the model changes the stamp.
+	 */
+	private long changeStamp() {
+		return ((long) data.getResetCount() << 32) | data.getHistorySize();
+	}
+
+	/**
+	 * Shows the final state of the animated move, including captures,
+	 * then applies the input that was queued meanwhile
+	 */
+	private void finishAnimation() {
+		animation = null;
 		updateGame();
 		repaint();
+		runPendingInput();
+	}
+
+	/**
+	 * Applies queued input one change at a time. Notifications may be delivered later and
+	 * coalesced, so after an input that changed the model the next one waits until stateChanged
+	 * has seen that change; otherwise several moves would arrive as one, without animation.
+	 * Input that changes nothing, like an illegal move, is passed over at once.
+	 */
+	private void runPendingInput() {
+		while (animation == null && !pendingInput.isEmpty() && changeStamp() == shownStamp) {
+			pendingInput.poll().run();
+		}
 	}
+
 	/**
 	 * Repaints the Mancala GUI 
+	 * The static layer is copied from the cache and only the marbles are drawn per frame
 	 * @param g a graphics object
 	 */
 	@Override
-	public void paint(Graphics g) {
+	protected void paintComponent(Graphics g) {
+		Metrics.PaintEvent event = new Metrics.PaintEvent();
+		event.begin();
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		paintBoard(g);
+		long end = Metrics.ENABLED ? System.nanoTime() : 0;
+		if (Metrics.ENABLED) Metrics.PAINT.record(end - start);
+		if (event.shouldCommit()) {
+			event.width = getWidth();
+			event.height = getHeight();
+			event.commit();
+		}
+		if (clickEvent != null && shownMoveCount >= clickMoveCount) {
+			if (Metrics.ENABLED) Metrics.CLICK_TO_PAINT.record(end - clickTime);
+			clickEvent.commit();
+			clickEvent = null;
+		}
+		if (Metrics.OVERLAY) {
+			paintMetrics(g);
+		}
+	}
+
+	/**
+	 * Draws the board: the cached static layer, the highlights and the marbles
+	 * @param g a graphics object
+	 */
+	private void paintBoard(Graphics g) {
 		super.paintComponent(g);
-		g.drawImage(boardFormat.backgroundImg(), 0, 0, this);
-		
-		g.setColor(Color.BLUE);
-		Font font = new Font("Futura", Font.BOLD, 100);
-		g.setFont(font);
-		g.drawString("A", 55, 100);
-		g.drawString("B", 1155, 100);
+		if (geometry == null) return;
+		updateTransform();
+		Graphics2D g2 = (Graphics2D) g.create();
+		AffineTransform device = g2.getTransform();
+		BufferedImage layer = geometry.getLayer(getWidth(), getHeight(), device.getScaleX(), device.getScaleY(),
+				boardTransform, this);
 
-		Graphics2D g2 = (Graphics2D) g;
+		// Blit the layer pixel for pixel, it already includes the device scale.
+		g2.setTransform(AffineTransform.getTranslateInstance(device.getTranslateX(), device.getTranslateY()));
+		g2.drawImage(layer, 0, 0, null);
+		g2.setTransform(device);
 
+		PitShape[] pits = geometry.getPits();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.transform(boardTransform);
+		if (hoverPit >= 0) {
+			g2.setColor(HOVER_COLOR);
+			g2.fill(pits[hoverPit].getShape());
+		}
+		if (landingPit >= 0) {
+			g2.setColor(LANDING_COLOR);
+			g2.setStroke(new BasicStroke(6));
+			g2.draw(pits[landingPit].getShape());
+		}
 		for (PitShape p : pits) {
 			p.fill(g2);
 		}
+		if (animation != null) {
+			animation.paint(g2, System.nanoTime());
+		}
+		g2.dispose();
+	}
+
+	/**
+	 * Draws the current metrics in the top left corner of the panel
+	 * @param g a graphics object
+	 */
+	private void paintMetrics(Graphics g) {
+		String[] lines = {
+			String.format("paint  mean %d us  p99 %d us  (%d)", Metrics.PAINT.getMean() / 1000,
+					Metrics.PAINT.getPercentile(99) / 1000, Metrics.PAINT.getCount()),
+			String.format("pit    mean %d us", Metrics.PIT_FILL.getMean() / 1000),
+			String.format("move   mean %d us  notify mean %d us", Metrics.MOVE.getMean() / 1000,
+					Metrics.NOTIFY.getMean() / 1000),
+			String.format("click  p99 %d us  max %d us", Metrics.CLICK_TO_PAINT.getPercentile(99) / 1000,
+					Metrics.CLICK_TO_PAINT.getMax() / 1000)
+		};
+		g.setFont(METRICS_FONT);
+		g.setColor(new Color(0, 0, 0, 160));
+		g.fillRect(0, 0, 360, 18 * lines.length + 8);
+		g.setColor(Color.GREEN);
+		for (int i = 0; i < lines.length; i++) {
+			g.drawString(lines[i], 6, 18 * (i + 1));
+		}
+	}
+
+	/**
+	 * Fits the board format into the current panel size, keeping its aspect ratio and centering it
+	 */
+	private void updateTransform() {
+		BoardFormat format = geometry.getFormat();
+		double scale = Math.min((double) getWidth() / format.getWidth(),
+				(double) getHeight() / format.getHeight());
+		double dx = (getWidth() - format.getWidth() * scale) / 2;
+		double dy = (getHeight() - format.getHeight() * scale) / 2;
+		boardTransform.setTransform(scale, 0, 0, scale, dx, dy);
+	}
+
+	/**
+	 * Returns the center of a pit in panel pixels, e.g. to click it from a test
+	 * @param index the board index of the pit
+	 * @return the center of the bounds of the pit as currently laid out
+	 * @throws IllegalStateException if no format has been set
+	 */
+	public Point getPitCenter(int index) {
+		if (geometry == null) {
+			throw new IllegalStateException("No board format set");
+		}
+		updateTransform();
+		Rectangle r = boardTransform.createTransformedShape(geometry.getPits()[index].getShape()).getBounds();
+		return new Point((int) r.getCenterX(), (int) r.getCenterY());
+	}
+
+	/**
+	 * Tells if a move is being animated, so input is queued rather than applied
+	 * @return true while a sowing animation runs
+	 */
+	public boolean isAnimating() {
+		return animation != null;
+	}
+
+	/**
+	 * Finds the pit under a point of the panel using the precomputed hit grid
+	 * @param px the x-coordinate in panel pixels
+	 * @param py the y-coordinate in panel pixels
+	 * @return the board index of the pit, -1 if the point is not on a pit
+	 */
+	private int pitIndexAt(int px, int py) {
+		double scale = boardTransform.getScaleX();
+		if (geometry == null || scale <= 0) return -1;
+		return geometry.pitAt((px - boardTransform.getTranslateX()) / scale,
+				(py - boardTransform.getTranslateY()) / scale);
 	}
+
+	/**
+	 * Highlights the pit under the mouse and the pit where its last stone would land
+	 * Only the pits whose highlight changed are repainted
+	 * @param px the x-coordinate in panel pixels
+	 * @param py the y-coordinate in panel pixels
+	 */
+	private void updateHover(int px, int py) {
+		int hover = -1;
+		int landing = -1;
+		int index = animation == null ? pitIndexAt(px, py) : -1;
+		if (index > 0 && index != 7) {
+			landing = data.previewLastPit(index < 7 ? 1 : 0, index < 7 ? index - 1 : 13 - index);
+			if (landing >= 0) {
+				hover = index;
+			}
+		}
+		if (hover == hoverPit && landing == landingPit) return;
+		repaintPit(hoverPit);
+		repaintPit(landingPit);
+		hoverPit = hover;
+		landingPit = landing;
+		repaintPit(hoverPit);
+		repaintPit(landingPit);
+		setCursor(Cursor.getPredefinedCursor(hover >= 0 ? Cursor.HAND_CURSOR : Cursor.DEFAULT_CURSOR));
+	}
+
+	/**
+	 * Repaints the area of the panel covered by one pit
+	 * @param index the board index of the pit, ignored if negative
+	 */
+	private void repaintPit(int index) {
+		if (index < 0) return;
+		Rectangle r = boardTransform.createTransformedShape(geometry.getPits()[index].getShape()).getBounds();
+		// Leave room for the outline stroke.
+		int border = (int) Math.ceil(6 * boardTransform.getScaleX()) + 1;
+		r.grow(border, border);
+		repaint(r);
+	}
+
 	/**
 	 * mouseClicked method will take the mouse area clicked on as an argument and distribute the stones
 	 * from the pit that was clicked 
+	 * Only a click whose move is made at once and accepted is timed until the paint that shows
+	 * the move; clicks on an illegal move or queued behind an animation are not.
 	 * @param e The part of the GUI that was clicked
 	 */
 	@Override
 	public void mouseClicked(MouseEvent e) {
-		PitShape[] pits;
-		int x = 0;
-		if (data.getIsPlayerA()) {
-			x = 0;
-			pits = pitInRowA;
+		int index = pitIndexAt(e.getX(), e.getY());
+		if (index <= 0 || index == 7) return;
+		Metrics.ClickToPaintEvent event = new Metrics.ClickToPaintEvent();
+		event.begin();
+		long time = System.nanoTime();
+		boolean immediate = animation == null && pendingInput.isEmpty() && changeStamp() == shownStamp;
+		int moves = data.getMoveCount();
+		if (index < 7) {
+			queueInput(() -> data.distributeStones(1, index - 1));
 		} else {
-			x = 1;
-			pits = pitInRowB;
+			queueInput(() -> data.distributeStones(0, 13 - index));
 		}
-		for (int i = 0; i < 6; i++) {
-			if (pits[i].contains(e.getPoint())) {
-				data.distributeStones(x, i);
-				break;
-			}
+		if (immediate && data.getMoveCount() > moves) {
+			clickEvent = event;
+			clickTime = time;
+			clickMoveCount = data.getMoveCount();
 		}
-		
 	}
 
 	@Override
@@ -172,7 +432,22 @@ public class BoardPanel extends JPanel implements ChangeListener, MouseListener
 
 	@Override
 	public void mouseExited(MouseEvent e) {
-		// TODO Auto-generated method stub
-		
+		mousePosition = null;
+		updateHover(-1, -1);
+	}
+
+	/**
+	 * Updates the hover highlight and the landing preview as the mouse moves
+	 * @param e the mouse event
+	 */
+	@Override
+	public void mouseMoved(MouseEvent e) {
+		mousePosition = e.getPoint();
+		updateHover(e.getX(), e.getY());
+	}
+
+	@Override
+	public void mouseDragged(MouseEvent e) {
+		mouseMoved(e);
 	}
 }
@@ -1,13 +1,21 @@
 package mancala;
 
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -26,22 +34,27 @@ import javax.swing.event.ChangeListener;
 public class ConfigDialog extends JDialog implements ActionListener {
 	private List<ChangeListener> listeners; 
 	private JTextField marbleCountField;
-	private JRadioButton easterStyle;
-	private JRadioButton goStyle;
+	private List<BoardFormat> styles;
+	private List<JRadioButton> styleButtons;
 	private static Font font = new Font("Arial", Font.BOLD, 18);
+	private static final String THEME_DIR = "themes";
 	
 	/**
 	 * Constructor for ConfigDialog class.
 	 * Prompts users for number of stones and initializes changeListener array.
+	 * Besides the built-in styles, every theme file in the themes directory is offered.
 	 */
 	public ConfigDialog() {
 		listeners = new ArrayList<ChangeListener>();
+		styles = new ArrayList<BoardFormat>();
+		styles.add(new EasterBoardFormat());
+		styles.add(new GOBoardFormat());
+		List<String> themeErrors = loadThemes(Paths.get(THEME_DIR));
 		this.setLayout(new BorderLayout());
 		// Blocks parent frame.
 		this.setModal(true);
 		
 		JPanel topPanel = new JPanel();
-		this.setPreferredSize(new Dimension(400, 150));
 		JLabel label = new JLabel("Enter the marbles per pit:");
 		label.setFont(font);
 		topPanel.add(label);
@@ -53,18 +66,17 @@ public class ConfigDialog extends JDialog implements ActionListener {
 		this.add(topPanel, BorderLayout.NORTH);
 		
 		ButtonGroup group = new ButtonGroup();
-		easterStyle = new JRadioButton("Easter Style");
-		easterStyle.setFont(font);
-		goStyle = new JRadioButton("GO Style");
-		goStyle.setFont(font);
-		group.add(easterStyle);
-		group.add(goStyle);
-		easterStyle.setSelected(true);
-		JPanel panel = new JPanel();
-		panel.add(easterStyle);
-		panel.add(goStyle);
+		styleButtons = new ArrayList<JRadioButton>();
+		JPanel panel = new JPanel(new GridLayout(0, 2));
+		for (BoardFormat style : styles) {
+			JRadioButton button = new JRadioButton(style.getName());
+			button.setFont(font);
+			group.add(button);
+			styleButtons.add(button);
+			panel.add(button);
+		}
+		styleButtons.get(0).setSelected(true);
 		this.add(panel, BorderLayout.CENTER);
-		panel.setPreferredSize(new Dimension(400, 60));
 		
 		JButton startButton = new JButton("Start");
 		startButton.addActionListener(this);
@@ -72,7 +84,16 @@ public class ConfigDialog extends JDialog implements ActionListener {
 		startButton.setPreferredSize(new Dimension(100, 45));
 		JPanel buttonPanel = new JPanel();
 		buttonPanel.add(startButton);
-		this.add(buttonPanel, BorderLayout.SOUTH);
+		JPanel southPanel = new JPanel(new BorderLayout());
+		southPanel.add(buttonPanel, BorderLayout.SOUTH);
+		if (!themeErrors.isEmpty()) {
+			// Themes that were left out are listed above the Start button.
+			JLabel statusLabel = new JLabel("<html>" + String.join("<br>", themeErrors) + "</html>");
+			statusLabel.setForeground(Color.RED);
+			statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+			southPanel.add(statusLabel, BorderLayout.CENTER);
+		}
+		this.add(southPanel, BorderLayout.SOUTH);
 	}
 	
 	/**
@@ -104,14 +125,56 @@ public class ConfigDialog extends JDialog implements ActionListener {
 	
 	/**
 	 * Returns the format of the board
-	 * @return new boardFormat object depending on which boardFormat is in use
+	 * @return the boardFormat object depending on which boardFormat is selected
 	 */
 	public BoardFormat getStyle() {
-		if (easterStyle.isSelected()) {
-			return new EasterBoardFormat();
-		} else {
-			return new GOBoardFormat();
+		for (int i = 0; i < styleButtons.size(); i++) {
+			if (styleButtons.get(i).isSelected()) {
+				return styles.get(i);
+			}
 		}
+		return styles.get(0);
+	}
+	
+	/**
+	 * Returns all formats the board can be switched to
+	 * @return the boardFormat objects, the same instances that getStyle returns
+	 */
+	public List<BoardFormat> getStyles() {
+		return new ArrayList<BoardFormat>(styles);
+	}
+	
+	/**
+	 * Adds the theme files of a directory to the available styles
+	 * A theme that cannot be read is left out
+	 * @param dir the directory with the theme files
+	 * @return one message per theme that was left out, empty if all could be read
+	 */
+	private List<String> loadThemes(Path dir) {
+		List<String> errors = new ArrayList<String>();
+		if (!Files.isDirectory(dir)) return errors;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.properties")) {
+			for (Path file : files) {
+				try {
+					styles.add(ThemeBoardFormat.load(file));
+				} catch (IOException | IllegalArgumentException e) {
+					errors.add("Skipping theme " + file.getFileName() + ": " + escape(e.getMessage()));
+				}
+			}
+		} catch (IOException e) {
+			errors.add("Cannot read themes from " + dir + ": " + escape(e.getMessage()));
+		}
+		return errors;
+	}
+	
+	/**
+	 * Escapes a message for the HTML of the status label
+	 * @param message the message, may be null
+	 * @return the message with &amp;, &lt; and &gt; escaped
+	 */
+	private static String escape(String message) {
+		if (message == null) return "";
+		return message.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
 	}
 	
 	/**
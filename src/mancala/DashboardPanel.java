@@ -0,0 +1,256 @@
+package mancala;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * View class that watches many games at once as a grid of small boards.
+ * Boards of the same format share one BoardGeometry, so the background layer and the
+ * marble sprite are rendered once per format and copied into every tile. A tile is only
+ * re-rendered after its game changed, and the tiles refreshed per frame are limited by a
+ * time budget; the rest follow on the next frames.
+ * Games may change on any thread.
+ * @author TeamNemo
+ *
+ */
+public class DashboardPanel extends JPanel implements FrameScheduler.FrameTask {
+	private static final long serialVersionUID = 1L;
+	private static final long FRAME_BUDGET_NANOS = 8000000L;
+	private static final int GAP = 6;
+	private static final int TITLE_HEIGHT = 18;
+	private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 13);
+	private int columns;
+	private List<Tile> tiles;
+	private Map<BoardFormat, BoardGeometry> geometries;
+	private AtomicBoolean refreshScheduled;
+	private int layoutWidth;
+	private int layoutHeight;
+	private int nextTile;
+
+	/**
+	 * One game in the grid
+	 */
+	private static class Tile {
+		DataModel game;
+		String title;
+		BoardGeometry geometry;
+		// The board as last reported by the game: data[0..13] like DataModel, then the player.
+		volatile int[] state;
+		volatile boolean dirty;
+		Rectangle bounds = new Rectangle();
+		BufferedImage image;
+	}
+
+	/**
+	 * Constructor for the DashboardPanel class
+	 * @param columns the number of boards per row
+	 */
+	public DashboardPanel(int columns) {
+		this.columns = columns;
+		tiles = new ArrayList<>();
+		geometries = new HashMap<>();
+		refreshScheduled = new AtomicBoolean();
+		setBackground(Color.DARK_GRAY);
+		setPreferredSize(new Dimension(columns * 330, 2 * 160));
+	}
+
+	/**
+	 * Adds a game to the grid and follows its changes
+	 * Must be called on the Event Dispatch Thread.
+	 * @param game the game to show
+	 * @param title the title shown above the board
+	 * @param format the format to draw the board in
+	 */
+	public void addGame(DataModel game, String title, BoardFormat format) {
+		Tile tile = new Tile();
+		tile.game = game;
+		tile.title = title;
+		tile.geometry = geometries.computeIfAbsent(format, BoardGeometry::new);
+		tile.state = snapshot(game);
+		tile.dirty = true;
+		tiles.add(tile);
+		game.attach(e -> {
+			tile.state = snapshot(game);
+			tile.dirty = true;
+			scheduleRefresh();
+		});
+		layoutWidth = -1;
+		int rows = (tiles.size() + columns - 1) / columns;
+		setPreferredSize(new Dimension(columns * 330, rows * 160));
+		revalidate();
+		scheduleRefresh();
+	}
+
+	/**
+	 * Copies the state of a game so the tile can be drawn without touching the game later
+	 */
+	private static int[] snapshot(DataModel game) {
+		int[] s = new int[15];
+		int[] rowA = game.getRowA();
+		int[] rowB = game.getRowB();
+		s[0] = game.getMancalaA();
+		s[7] = game.getMancalaB();
+		for (int i = 0; i < 6; i++) {
+			s[13 - i] = rowA[i];
+			s[i + 1] = rowB[i];
+		}
+		s[14] = game.getIsPlayerA() ? 1 : 0;
+		return s;
+	}
+
+	/**
+	 * Starts the frame task on the Event Dispatch Thread, once for any number of changes
+	 */
+	private void scheduleRefresh() {
+		if (refreshScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(() -> FrameScheduler.getInstance().schedule(this));
+		}
+	}
+
+	/**
+	 * Re-renders dirty tiles until the frame budget is used up
+	 * @param now the frame time
+	 * @return true if dirty tiles are left for the next frame
+	 */
+	@Override
+	public boolean frame(long now) {
+		refreshScheduled.set(false);
+		if (layoutWidth != getWidth() || layoutHeight != getHeight()) {
+			layoutTiles();
+		}
+		long deadline = now + FRAME_BUDGET_NANOS;
+		for (int n = 0; n < tiles.size(); n++) {
+			if (nextTile >= tiles.size()) nextTile = 0;
+			Tile tile = tiles.get(nextTile++);
+			if (!tile.dirty) continue;
+			renderTile(tile);
+			repaint(tile.bounds);
+			if (System.nanoTime() > deadline) break;
+		}
+		for (Tile tile : tiles) {
+			if (tile.dirty) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Places the tiles in a grid that fills the width of the panel
+	 */
+	private void layoutTiles() {
+		layoutWidth = getWidth();
+		layoutHeight = getHeight();
+		int w = Math.max(1, (layoutWidth - GAP) / columns - GAP);
+		for (int i = 0; i < tiles.size(); i++) {
+			Tile tile = tiles.get(i);
+			BoardFormat f = tile.geometry.getFormat();
+			int h = TITLE_HEIGHT + w * f.getHeight() / f.getWidth();
+			tile.bounds.setBounds(GAP + (i % columns) * (w + GAP), GAP + (i / columns) * (h + GAP), w, h);
+			tile.image = null;
+			tile.dirty = true;
+		}
+	}
+
+	/**
+	 * Draws a tile into its own image: the shared layer, then a sprite per marble and the title
+	 */
+	private void renderTile(Tile tile) {
+		tile.dirty = false;
+		int[] state = tile.state;
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		double scale = gc == null ? 1 : gc.getDefaultTransform().getScaleX();
+		int w = tile.bounds.width;
+		int h = tile.bounds.height - TITLE_HEIGHT;
+		int pw = Math.max(1, (int) Math.ceil(w * scale));
+		int ph = Math.max(1, (int) Math.ceil(tile.bounds.height * scale));
+		if (tile.image == null) {
+			tile.image = new BufferedImage(pw, ph, BufferedImage.TYPE_INT_ARGB);
+		}
+		BoardFormat f = tile.geometry.getFormat();
+		double boardScale = (double) w / f.getWidth();
+		AffineTransform toTile = new AffineTransform(boardScale, 0, 0, boardScale, 0, 0);
+		// The board below the title, in device pixels.
+		AffineTransform toDevice = new AffineTransform(scale * boardScale, 0, 0, scale * boardScale,
+				0, TITLE_HEIGHT * scale);
+
+		Graphics2D g = tile.image.createGraphics();
+		g.setBackground(getBackground());
+		g.clearRect(0, 0, pw, ph);
+		g.drawImage(tile.geometry.getLayer(w, h, scale, scale, toTile, this), 0, (int) (TITLE_HEIGHT * scale), null);
+		BufferedImage sprite = tile.geometry.getMarbleSprite(scale * boardScale);
+		PitShape[] pits = tile.geometry.getPits();
+		Point2D.Double p = new Point2D.Double();
+		for (int i = 0; i < 14; i++) {
+			for (int m = 0; m < state[i]; m++) {
+				// The sprite has a one pixel margin for the outline.
+				p.setLocation(pits[i].getMarbleX(m) - 1, pits[i].getMarbleY(m) - 1);
+				toDevice.transform(p, p);
+				g.drawImage(sprite, (int) p.x, (int) p.y, null);
+			}
+		}
+		g.scale(scale, scale);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setFont(TITLE_FONT);
+		g.setColor(Color.WHITE);
+		g.drawString(String.format("%s   A %d : %d B   %s to move", tile.title, state[0], state[7],
+				state[14] == 1 ? "A" : "B"), 2, TITLE_HEIGHT - 4);
+		g.dispose();
+	}
+
+	/**
+	 * Renders all tiles again once a background image has finished loading
+	 */
+	@Override
+	public boolean imageUpdate(Image img, int flags, int x, int y, int w, int h) {
+		if ((flags & (ALLBITS | FRAMEBITS)) != 0) {
+			for (Tile tile : tiles) {
+				tile.dirty = true;
+			}
+			scheduleRefresh();
+		}
+		return (flags & (ALLBITS | ABORT)) == 0;
+	}
+
+	/**
+	 * Copies the tile images; nothing is rendered here
+	 * @param g a graphics object
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		if (layoutWidth != getWidth() || layoutHeight != getHeight()) {
+			// Resized: lay out and render on the next frames.
+			FrameScheduler.getInstance().schedule(this);
+			return;
+		}
+		Graphics2D g2 = (Graphics2D) g.create();
+		AffineTransform device = g2.getTransform();
+		Rectangle clip = g.getClipBounds();
+		for (Tile tile : tiles) {
+			if (tile.image == null || (clip != null && !clip.intersects(tile.bounds))) continue;
+			// The image is in device pixels, so draw it without the device scale.
+			g2.setTransform(AffineTransform.getTranslateInstance(
+					device.getTranslateX() + tile.bounds.x * device.getScaleX(),
+					device.getTranslateY() + tile.bounds.y * device.getScaleY()));
+			g2.drawImage(tile.image, 0, 0, null);
+		}
+		g2.dispose();
+	}
+}
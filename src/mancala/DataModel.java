@@ -1,6 +1,11 @@
 package mancala;
 
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -18,29 +23,57 @@ public class DataModel {
 	private boolean isPlayerA; // boolean to store which player is currently playing: 1 for playerA, 0 for playerB.
 	private boolean allowUndo; // if the current status is after undo, then it is 0; otherwise it is 1.
 	private static final int UNDO_LIMIT = 3; // the maximum undo limit
+	private static final MancalaRules RULES = MancalaRules.KALAH; // the board layout and moves
+	public static final int STATE_BYTES = 58; // size of the state written by writeState
+	public static final int MAX_STONES = 255; // the most stones per pit a journal record can hold
 	private int undoTimes; // how many times the player have used undo within a round
 	private List<ChangeListener> listeners;
 	private boolean turnEnd;
+	private int sowOrigin; // the pit the last move was taken from
+	private int sowStones; // the number of stones the last move sowed
+	private boolean sowPlayerA; // the player who made the last move
+	private int moveCount; // increases with every completed distributeStones
+	private int moveResult; // the MancalaRules flags of the last move
+	private int resetCount; // increases whenever the board is set instead of played
+	private int[] historyBoard; // the board as it was last set
+	private boolean historyPlayerA; // the player to move when the board was last set
+	private byte[] history; // the inputs accepted since then, encoded like GameRecord
+	private int historySize;
+	private GameJournal journal; // records every accepted change when attached
+	private long gameId;
+	private Executor dispatcher; // delivers coalesced notifications, null to notify at once
+	private AtomicBoolean deliveryPending; // a delivery has been handed to the dispatcher
+	private int transactionDepth;
+	private boolean changedInTransaction;
 	
 	/**
 	 * Constructor for DataModel class
 	 * Initializes int arrays for the board and sets all variables to their default state
 	 */
 	public DataModel() {
-		listeners = new ArrayList<>();
+		// Listeners are added and removed rarely, and may detach while being notified.
+		listeners = new CopyOnWriteArrayList<>();
 		data = new int[14];
 		last = new int[14];
+		historyBoard = new int[14];
+		history = new byte[32];
 		isPlayerA = false;
 		allowUndo = false;
 		undoTimes = UNDO_LIMIT;
 		turnEnd = false;
+		deliveryPending = new AtomicBoolean();
 	}
 	
 	/**
 	 * Initializes the board based on the number of stones inputed by the players and notifies view class
 	 * @param numStones the number of stones that will placed in each pit at the start of the game
+	 * @throws IllegalArgumentException if numStones is negative or over MAX_STONES
 	 */
 	public void init(int numStones) {
+		if (numStones < 0 || numStones > MAX_STONES) {
+			throw new IllegalArgumentException("Invalid number of stones: " + numStones);
+		}
+		checkJournal();
 		for (int i = 0; i < 14; i++) {
 			if (i == 0 || i == 7) {
 				data[i] = 0;
@@ -48,7 +81,59 @@ public class DataModel {
 				data[i] = numStones;
 			}
 		}
+		resetHistory();
 		notifyListeners();
+		journal(GameJournal.INIT, numStones, 0);
+	}
+
+	/**
+	 * Records every following init, accepted move, nextPlayer and accepted undo in a journal
+	 * @param journal the journal to append to, null to stop journaling
+	 * @param gameId the id of this game in the journal
+	 */
+	public void setJournal(GameJournal journal, long gameId) {
+		this.journal = journal;
+		this.gameId = gameId;
+	}
+
+	/**
+	 * Refuses a change before it is made if the journal can no longer record it,
+	 * so that the model is left as it was
+	 * @throws UncheckedIOException if the journal has failed
+	 * @throws IllegalStateException if the journal is closed
+	 */
+	private void checkJournal() {
+		if (journal != null) journal.checkWritable();
+	}
+
+	/**
+	 * Journals a change once the listeners have been notified of it. If the journal fails
+	 * between checkJournal and here, the views still follow the model and the failure
+	 * is reported to the caller of the change.
+	 */
+	private void journal(byte op, int a, int b) {
+		if (journal != null) journal.append(gameId, op, a, b);
+	}
+
+	/**
+	 * Starts a new history at the current board
+	 */
+	private void resetHistory() {
+		resetCount++;
+		System.arraycopy(data, 0, historyBoard, 0, 14);
+		historyPlayerA = isPlayerA;
+		historySize = 0;
+	}
+
+	/**
+	 * Adds an accepted input to the history
+	 * @param op a move (row * 6 + pit), GameRecord.NEXT or GameRecord.UNDO
+	 */
+	private void record(int op) {
+		if (historySize == history.length) {
+			history = Arrays.copyOf(history, historySize * 2);
+		}
+		history[historySize++] = (byte) op;
 	}
 
 	/**
@@ -58,15 +143,79 @@ public class DataModel {
 	public void attach(ChangeListener listener) {
 		listeners.add(listener);
 	}
+
+	/**
+	 * Detaches a listener, so it is no longer notified and can be garbage collected
+	 * @param listener the listener given to attach; nothing happens if it is not attached
+	 */
+	public void detach(ChangeListener listener) {
+		listeners.remove(listener);
+	}
 	
 	/**
-	 * Notifies all registered listeners.
+	 * Delivers notifications through an executor instead of calling the listeners at once.
+	 * Changes made before a delivery runs are coalesced into it, so the listeners see only
+	 * the latest state. With the frame executor of FrameScheduler, this is at most one
+	 * notification per frame on the Event Dispatch Thread. The listeners read the model when
+	 * the delivery runs, so the model should be changed on the thread of the executor.
+	 * @param dispatcher the executor, null to notify synchronously as before
+	 */
+	public void setDispatcher(Executor dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Starts a transaction: notifications are held back until the matching endTransaction,
+	 * which sends a single one if anything changed. Transactions may be nested.
+	 */
+	public void beginTransaction() {
+		transactionDepth++;
+	}
+
+	/**
+	 * Ends a transaction started by beginTransaction
+	 * @throws IllegalStateException if no transaction is open
+	 */
+	public void endTransaction() {
+		if (transactionDepth == 0) {
+			throw new IllegalStateException("No transaction to end");
+		}
+		if (--transactionDepth == 0 && changedInTransaction) {
+			changedInTransaction = false;
+			notifyListeners();
+		}
+	}
+
+	/**
+	 * Notifies all registered listeners, later if a transaction is open or a dispatcher is set.
 	 */
 	public void notifyListeners() {
+		if (transactionDepth > 0) {
+			changedInTransaction = true;
+		} else if (dispatcher == null) {
+			deliver();
+		} else if (deliveryPending.compareAndSet(false, true)) {
+			dispatcher.execute(() -> {
+				// Cleared first: a change made by a listener needs a delivery of its own.
+				deliveryPending.set(false);
+				deliver();
+			});
+		}
+	}
+
+	private void deliver() {
+		Metrics.NotifyEvent event = new Metrics.NotifyEvent();
+		event.begin();
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
 		ChangeEvent ce = new ChangeEvent(this);
 		for (ChangeListener listener : listeners) {
 			listener.stateChanged(ce);
 		}
+		if (Metrics.ENABLED) Metrics.NOTIFY.record(System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.listeners = listeners.size();
+			event.commit();
+		}
 	}
 	
 	/**
@@ -74,52 +223,70 @@ public class DataModel {
 	 * @param x the row number that indicates playerA or playerB to be chosen
 	 * @param y the line number that indicates the pit location of a player
 	 * @return true if the move has been completed, false if the player has another move or the move was invalid
+	 * @throws UncheckedIOException if the game is journaled and the journal has failed
 	 */
 	public boolean distributeStones(int x, int y) {
+		checkJournal();
+		Metrics.MoveEvent event = new Metrics.MoveEvent();
+		event.begin();
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		boolean accepted = sow(x, y);
+		if (Metrics.ENABLED) Metrics.MOVE.record(System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.row = x;
+			event.column = y;
+			event.accepted = accepted;
+			event.commit();
+		}
+		if (accepted) {
+			record(x * 6 + y);
+			notifyListeners();
+			journal(GameJournal.MOVE, x, y);
+		}
+		return accepted;
+	}
+	
+	/**
+	 * Moves the stones on the board without notifying the viewer
+	 * @param x the row number that indicates playerA or playerB to be chosen
+	 * @param y the line number that indicates the pit location of a player
+	 * @return true if the move has been completed, false if the move was invalid
+	 */
+	private boolean sow(int x, int y) {
 		if (x < 0 || x >= 2 || y < 0 || y >= 6) return false;
 		if (turnEnd) return false;
 		if (isPlayerA && x == 1) return false;
 		if (!isPlayerA && x == 0) return false;
-		int i = (x == 1 ? y + 1 : 13 - y);
+		int i = RULES.pitIndex(x, y);
 		if (data[i] <= 0) return false;
 		saveData();
 		
-		int n = data[i];
-		data[i] = 0;
-		turnEnd = true;
-		while (n > 0) {
-			i = (i+1) % 14;
-			if (i == 0 && !isPlayerA) continue;
-			if (i == 7 && isPlayerA) continue;
-			n--;
-			if (n == 0) {
-				if (i == 0 || i == 7) {
-					turnEnd = false;
-				} else if (data[i] == 0) {
-					int k = isPlayerA ? 0 : 7;
-					data[k] += 1 + data[14 - i];
-					data[14 - i] = 0;
-					// Will added to 0 later.
-					data[i] = -1;
-				}
-			}
-			data[i]++;
-		}
-	
-		if (checkGameEnd()) {
-			for (i = 1; i <= 6; i++) {
-				data[7] += data[i];
-				data[i] = 0;
-			}
-			for (i = 8; i <= 13; i++) {
-				data[0] += data[i];
-				data[i] = 0;
-			}
-		}
-		notifyListeners();
+		// Only what is needed to rebuild the path; getLastSowPath walks it when asked.
+		sowOrigin = i;
+		sowStones = data[i];
+		sowPlayerA = isPlayerA;
+		moveResult = RULES.sow(data, isPlayerA, i);
+		turnEnd = (moveResult & MancalaRules.EXTRA_TURN) == 0;
+		moveCount++;
 		return true;
 	}
 	
+	/**
+	 * Predicts where the last stone of a move would land without changing the board
+	 * @param x the row number that indicates playerA or playerB to be chosen
+	 * @param y the line number that indicates the pit location of a player
+	 * @return the index of the pit or mancala that receives the last stone, -1 if the move is invalid
+	 */
+	public int previewLastPit(int x, int y) {
+		if (x < 0 || x >= 2 || y < 0 || y >= 6) return -1;
+		if (turnEnd) return -1;
+		if (isPlayerA && x == 1) return -1;
+		if (!isPlayerA && x == 0) return -1;
+		int i = RULES.pitIndex(x, y);
+		if (data[i] <= 0) return -1;
+		return RULES.lastPit(data, isPlayerA, i);
+	}
+	
 	/**
 	 * Saves the current setup of the board and sets allowUndo to true if there are undoTimes is not zero
 	 */
@@ -134,13 +301,17 @@ public class DataModel {
 	
 	/**
 	 * Changes player and resets the undoTimes, allowUndo, and turnEnd before notifying the viewer
+	 * @throws UncheckedIOException if the game is journaled and the journal has failed
 	 */
 	public void nextPlayer() {
+		checkJournal();
 		isPlayerA = !isPlayerA;
 		allowUndo = false;
 		undoTimes = UNDO_LIMIT;
 		turnEnd = false;
+		record(GameRecord.NEXT);
 		notifyListeners();
+		journal(GameJournal.NEXT, 0, 0);
 	}
 	
 	/**
@@ -191,47 +362,190 @@ public class DataModel {
 		return a;
 	}
 	
+	/**
+	 * Returns the whole board in the layout of MancalaRules.KALAH, for engines
+	 * @return a copy of the board: data[0] mancala A, data[1..6] row B, data[7] mancala B, data[8..13] row A
+	 */
+	public int[] getBoard() {
+		return data.clone();
+	}
+	
+	/**
+	 * Copies the whole board without allocating, for tools that look at every move
+	 * @param board receives the 14 values in the layout of getBoard
+	 */
+	public void copyBoard(int[] board) {
+		System.arraycopy(data, 0, board, 0, 14);
+	}
+	
+	/**
+	 * Jumps to a position, e.g. one from an AnalysisTree, and notifies the viewer.
+	 * The turn of the given player starts fresh, so there is nothing to undo.
+	 * @param board the board in the layout of getBoard, copied
+	 * @param playerA true if player A is to move
+	 * @throws IllegalStateException if the game is journaled, since the journal only records inputs
+	 */
+	public void setPosition(int[] board, boolean playerA) {
+		if (journal != null) {
+			throw new IllegalStateException("A journaled game cannot jump to a position");
+		}
+		System.arraycopy(board, 0, data, 0, 14);
+		isPlayerA = playerA;
+		turnEnd = false;
+		allowUndo = false;
+		undoTimes = UNDO_LIMIT;
+		resetHistory();
+		notifyListeners();
+	}
+	
 	/**
 	 * Checks if the game has ended by checking each row of pits to see if the entire row is empty.
 	 * @return true if a row of pits is empty, false if neither row is empty
 	 */
 	public boolean checkGameEnd() {
-		boolean isEmpty = true;
-		for (int i = 1; i <= 6; i++) {
-			if (data[i] > 0) {
-				isEmpty = false;
-				break;
-			}
-		}
-		if (isEmpty) return true;
-		isEmpty = true;
-		for (int i = 8; i <= 13; i++) {
-			if (data[i] > 0) {
-				isEmpty = false;
-				break;
-			}
-		}
-		if (isEmpty) return true;
-		return false;
+		return RULES.isGameEnd(data);
 	}
 	
 	/**
 	 * Checks if the player can undo. 
 	 * If the player can undo, the board will revert to its previous state and notify changeListeners
 	 * @return true if the undo was allowed, false if boolean allowUndo is equal to false
+	 * @throws UncheckedIOException if the game is journaled and the journal has failed
 	 */
 	public boolean undoATurn() {
 		if (!allowUndo) return false;
+		checkJournal();
 		allowUndo = false;
 		undoTimes--;
 		turnEnd = false;
 		for (int i = 0; i < 14; i++) {
 			data[i] = last[i];
 		}
+		record(GameRecord.UNDO);
 		notifyListeners();
+		journal(GameJournal.UNDO, 0, 0);
 		return true;
 	}
 	
+	/**
+	 * Returns how many moves have been made, so that views can tell a move from other changes
+	 * @return the number of completed distributeStones calls
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+	
+	/**
+	 * Returns how often the board has been set by init, setPosition or readState instead of
+	 * played; each time starts a new history. Together with the history, this lets a listener
+	 * replay every input even when several changes were coalesced into one notification.
+	 * @return the number of times the board was set
+	 */
+	public int getResetCount() {
+		return resetCount;
+	}
+
+	/**
+	 * Returns the board as it was last set by init, setPosition or readState
+	 * @return a copy of the board at the start of the history, in the layout of getBoard
+	 */
+	public int[] getHistoryBoard() {
+		return historyBoard.clone();
+	}
+
+	/**
+	 * Returns the player to move when the board was last set
+	 * @return true if player A was to move at the start of the history
+	 */
+	public boolean getHistoryPlayerA() {
+		return historyPlayerA;
+	}
+
+	/**
+	 * Returns the number of inputs accepted since the board was last set
+	 * @return the size of the history
+	 */
+	public int getHistorySize() {
+		return historySize;
+	}
+
+	/**
+	 * Returns an input of the history
+	 * @param i the index of the input, less than getHistorySize()
+	 * @return a move (row * 6 + pit), GameRecord.NEXT or GameRecord.UNDO
+	 * @throws IndexOutOfBoundsException if there is no such input
+	 */
+	public int getHistoryInput(int i) {
+		if (i < 0 || i >= historySize) {
+			throw new IndexOutOfBoundsException("No input " + i + " in a history of " + historySize);
+		}
+		return history[i];
+	}
+
+	/**
+	 * Returns the pit the last move was taken from
+	 * @return the board index of the pit the last move emptied
+	 */
+	public int getLastSowOrigin() {
+		return sowOrigin;
+	}
+	
+	/**
+	 * Returns what happened in the last move
+	 * @return a combination of MancalaRules.EXTRA_TURN, MancalaRules.CAPTURE and MancalaRules.GAME_END
+	 */
+	public int getLastMoveResult() {
+		return moveResult;
+	}
+	
+	/**
+	 * Returns the pits that received a stone in the last move, in sowing order
+	 * @return the board indexes sown by the last move, in a new array
+	 */
+	public int[] getLastSowPath() {
+		int[] path = new int[sowStones];
+		for (int k = 0, j = sowOrigin; k < sowStones; k++) {
+			j = RULES.next(j, sowPlayerA, sowOrigin);
+			path[k] = j;
+		}
+		return path;
+	}
+	
+	/**
+	 * Writes the complete game state to a buffer: both boards as shorts, then the flags and undoTimes.
+	 * Listeners and the last move are not part of the state.
+	 * @param buf the buffer to write to
+	 * @param offset the position of the first of STATE_BYTES bytes
+	 */
+	public void writeState(ByteBuffer buf, int offset) {
+		for (int i = 0; i < 14; i++) {
+			buf.putShort(offset + 2 * i, (short) data[i]);
+			buf.putShort(offset + 28 + 2 * i, (short) last[i]);
+		}
+		int flags = (isPlayerA ? 1 : 0) | (turnEnd ? 2 : 0) | (allowUndo ? 4 : 0);
+		buf.put(offset + 56, (byte) flags);
+		buf.put(offset + 57, (byte) undoTimes);
+	}
+	
+	/**
+	 * Restores a game state written by writeState and notifies the viewer
+	 * @param buf the buffer to read from
+	 * @param offset the position of the first of STATE_BYTES bytes
+	 */
+	public void readState(ByteBuffer buf, int offset) {
+		for (int i = 0; i < 14; i++) {
+			data[i] = buf.getShort(offset + 2 * i);
+			last[i] = buf.getShort(offset + 28 + 2 * i);
+		}
+		int flags = buf.get(offset + 56);
+		isPlayerA = (flags & 1) != 0;
+		turnEnd = (flags & 2) != 0;
+		allowUndo = (flags & 4) != 0;
+		undoTimes = buf.get(offset + 57);
+		resetHistory();
+		notifyListeners();
+	}
+	
 	/**
 	 * Returns the number of undos left for the current player's turn
 	 * @return undoTimes the number of undos that are left for the players turn (max 3)
@@ -27,6 +27,14 @@ public class EasterBoardFormat implements BoardFormat {
 		return new RoundRectangle2D.Double(ps.getX(), ps.getY(), ps.getWidth(), ps.getHeight(), 15, 15);
 	}
 	
+	/**
+	 * Returns the name of this format.
+	 */
+	@Override
+	public String getName() {
+		return "Easter Style";
+	}
+	
 	/**
 	 * Returns width of the board.
 	 */
@@ -35,6 +43,14 @@ public class EasterBoardFormat implements BoardFormat {
 		return 1280;
 	}
 	
+	/**
+	 * Returns height of the board.
+	 */
+	@Override
+	public int getHeight() {
+		return 500;
+	}
+	
 	/**
 	 * Returns the left position of mancala A.
 	 */
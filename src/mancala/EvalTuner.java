@@ -0,0 +1,426 @@
+package mancala;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line tool that tunes the weights of Evaluator.
+ * generate plays games of the Evaluator against itself on all cores and writes every position
+ * with the final score margin of the player to move. fit streams position files from disk
+ * on all cores and solves the least squares regression of the margin on the features;
+ * each worker reads its own range of records and only sums are merged, so memory does
+ * not grow with the corpus. tune alternates both, each round playing with the last fit.
+ * Usage: EvalTuner generate|fit|tune [-pits N] [-variant kalah|oware] [-nocapture] [-stones N]
+ * [-games N] [-epsilon P] [-threads N] [-seed N] [-weights w,w,w,w,w] [-iterations N] file...
+ * @author TeamNemo
+ *
+ */
+public class EvalTuner {
+	private static final int MAGIC = 0x4D455650; // "MEVP"
+	private static final int HEADER_BYTES = 16;
+	private static final int MAX_PLIES = 2000;
+	private static final int BATCH_RECORDS = 4096;
+	private MancalaRules rules;
+	private int threads;
+	private int recordBytes;
+
+	/**
+	 * Constructor for the EvalTuner class
+	 * @param rules the rules games are played by
+	 * @param threads the number of worker threads
+	 */
+	public EvalTuner(MancalaRules rules, int threads) {
+		this.rules = rules;
+		this.threads = threads;
+		// The board as shorts, the player to move and the label.
+		recordBytes = 2 * rules.getSize() + 3;
+	}
+
+	/**
+	 * Plays games with the given weights and writes every position to a file
+	 * Moves are the best one-ply move, or a random one with probability epsilon.
+	 * @param file the position file to create
+	 * @param games the number of games
+	 * @param stones the number of stones per pit at the start
+	 * @param weights the weights to play with
+	 * @param epsilon the probability of a random move
+	 * @param seed the seed of the random moves
+	 * @return the number of positions written
+	 * @throws IOException if the file cannot be written
+	 */
+	public long generate(Path file, int games, int stones, double[] weights, double epsilon, long seed)
+			throws IOException {
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(rules.getPits()).put((byte) rules.getVariant().ordinal())
+					.put((byte) (rules.isCapture() ? 1 : 0)).flip();
+			out.write(header, 0);
+			AtomicLong end = new AtomicLong(HEADER_BYTES);
+			AtomicLong nextGame = new AtomicLong();
+			runWorkers(t -> {
+				SplittableRandom random = new SplittableRandom(seed + t);
+				Evaluator eval = new Evaluator(rules, weights);
+				ByteBuffer buf = ByteBuffer.allocate(BATCH_RECORDS * recordBytes);
+				int[] board = new int[rules.getSize()];
+				short[] positions = new short[64 * rules.getSize()];
+				boolean[] sides = new boolean[64];
+				while (nextGame.getAndIncrement() < games) {
+					rules.init(board, stones);
+					boolean playerA = random.nextBoolean();
+					int plies = 0;
+					for (; plies < MAX_PLIES && !rules.isGameEnd(board); plies++) {
+						if (plies == sides.length) {
+							sides = Arrays.copyOf(sides, plies * 2);
+							positions = Arrays.copyOf(positions, plies * 2 * board.length);
+						}
+						for (int i = 0; i < board.length; i++) {
+							positions[plies * board.length + i] = (short) board[i];
+						}
+						sides[plies] = playerA;
+						int move = random.nextDouble() < epsilon ? randomMove(board, playerA, random)
+								: eval.bestMove(board, playerA);
+						if ((rules.sow(board, playerA, move) & MancalaRules.EXTRA_TURN) == 0) {
+							playerA = !playerA;
+						}
+					}
+					if (plies == MAX_PLIES) continue; // a cycle without captures, no result
+					int margin = board[rules.getMancalaA()] - board[rules.getMancalaB()];
+					for (int p = 0; p < plies; p++) {
+						if (buf.remaining() < recordBytes) {
+							flush(out, buf, end);
+						}
+						for (int i = 0; i < board.length; i++) {
+							buf.putShort(positions[p * board.length + i]);
+						}
+						buf.put((byte) (sides[p] ? 1 : 0));
+						buf.putShort((short) (sides[p] ? margin : -margin));
+					}
+				}
+				flush(out, buf, end);
+			});
+			return (end.get() - HEADER_BYTES) / recordBytes;
+		}
+	}
+
+	private int randomMove(int[] board, boolean playerA, SplittableRandom random) {
+		int first = rules.firstPit(playerA);
+		int i;
+		do {
+			i = first + random.nextInt(rules.getPits());
+		} while (board[i] <= 0);
+		return i;
+	}
+
+	/**
+	 * Appends whole records at the end of the file; positional writes of workers do not overlap
+	 */
+	private static void flush(FileChannel out, ByteBuffer buf, AtomicLong end) throws IOException {
+		buf.flip();
+		long position = end.getAndAdd(buf.remaining());
+		while (buf.hasRemaining()) {
+			position += out.write(buf, position);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * The sums of a least squares regression, merged from all workers
+	 */
+	public static class Fit {
+		long count;
+		double[][] xtx = new double[Evaluator.FEATURES][Evaluator.FEATURES];
+		double[] xty = new double[Evaluator.FEATURES];
+		double yy;
+
+		void add(Fit o) {
+			count += o.count;
+			yy += o.yy;
+			for (int a = 0; a < Evaluator.FEATURES; a++) {
+				xty[a] += o.xty[a];
+				for (int b = 0; b < Evaluator.FEATURES; b++) {
+					xtx[a][b] += o.xtx[a][b];
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of positions
+		 * @return the number of positions
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Solves the normal equations with a small ridge term
+		 * @return the weights with the least squared error
+		 */
+		public double[] solve() {
+			int n = Evaluator.FEATURES;
+			double[][] m = new double[n][n + 1];
+			for (int a = 0; a < n; a++) {
+				for (int b = 0; b < n; b++) {
+					m[a][b] = xtx[a][b];
+				}
+				m[a][a] += 1e-6 * Math.max(1, count);
+				m[a][n] = xty[a];
+			}
+			for (int c = 0; c < n; c++) {
+				int pivot = c;
+				for (int r = c + 1; r < n; r++) {
+					if (Math.abs(m[r][c]) > Math.abs(m[pivot][c])) pivot = r;
+				}
+				double[] tmp = m[c];
+				m[c] = m[pivot];
+				m[pivot] = tmp;
+				for (int r = 0; r < n; r++) {
+					if (r == c) continue;
+					double f = m[r][c] / m[c][c];
+					for (int k = c; k <= n; k++) {
+						m[r][k] -= f * m[c][k];
+					}
+				}
+			}
+			double[] w = new double[n];
+			for (int a = 0; a < n; a++) {
+				w[a] = m[a][n] / m[a][a];
+			}
+			return w;
+		}
+
+		/**
+		 * Returns the root mean squared error of predicting the margin with the given weights
+		 * @param w the weights
+		 * @return the error in stones
+		 */
+		public double rmse(double[] w) {
+			double sse = yy;
+			for (int a = 0; a < Evaluator.FEATURES; a++) {
+				sse -= 2 * w[a] * xty[a];
+				for (int b = 0; b < Evaluator.FEATURES; b++) {
+					sse += w[a] * xtx[a][b] * w[b];
+				}
+			}
+			return Math.sqrt(Math.max(0, sse) / Math.max(1, count));
+		}
+	}
+
+	/**
+	 * Streams position files and sums the regression of the margin on the features
+	 * @param files position files written by generate with the same rules
+	 * @return the merged sums
+	 * @throws IOException if a file cannot be read or was written with other rules
+	 */
+	public Fit fit(List<Path> files) throws IOException {
+		Fit total = new Fit();
+		for (Path file : files) {
+			try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				while (header.hasRemaining() && in.read(header, header.position()) > 0) {
+				}
+				header.flip();
+				if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC
+						|| header.getInt() != rules.getPits() || header.get() != rules.getVariant().ordinal()
+						|| header.get() != (rules.isCapture() ? 1 : 0)) {
+					throw new IOException(file + ": not a position file for these rules");
+				}
+				long records = (in.size() - HEADER_BYTES) / recordBytes;
+				long perWorker = (records + threads - 1) / threads;
+				Fit[] parts = new Fit[threads];
+				runWorkers(t -> {
+					Fit fit = new Fit();
+					parts[t] = fit;
+					Evaluator eval = new Evaluator(rules, Evaluator.DEFAULT_WEIGHTS);
+					ByteBuffer buf = ByteBuffer.allocateDirect(BATCH_RECORDS * recordBytes);
+					int[] board = new int[rules.getSize()];
+					double[] x = new double[Evaluator.FEATURES];
+					long first = Math.min(records, t * perWorker);
+					long last = Math.min(records, first + perWorker);
+					for (long r = first; r < last; r += BATCH_RECORDS) {
+						int n = (int) Math.min(BATCH_RECORDS, last - r);
+						buf.clear().limit(n * recordBytes);
+						long position = HEADER_BYTES + r * recordBytes;
+						while (buf.hasRemaining()) {
+							int read = in.read(buf, position);
+							if (read < 0) throw new IOException(file + ": truncated");
+							position += read;
+						}
+						buf.flip();
+						for (int k = 0; k < n; k++) {
+							for (int i = 0; i < board.length; i++) {
+								board[i] = buf.getShort();
+							}
+							boolean playerA = buf.get() == 1;
+							double y = buf.getShort();
+							eval.features(board, playerA, x);
+							fit.count++;
+							fit.yy += y * y;
+							for (int a = 0; a < Evaluator.FEATURES; a++) {
+								fit.xty[a] += x[a] * y;
+								for (int b = 0; b < Evaluator.FEATURES; b++) {
+									fit.xtx[a][b] += x[a] * x[b];
+								}
+							}
+						}
+					}
+				});
+				for (Fit part : parts) {
+					total.add(part);
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * A worker body that may fail with an IOException
+	 */
+	private interface Worker {
+		void run(int index) throws IOException;
+	}
+
+	/**
+	 * Runs one worker per thread and waits for all of them
+	 */
+	private void runWorkers(Worker worker) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int index = t;
+				futures.add(pool.submit(() -> {
+					worker.run(index);
+					return null;
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static String format(double[] w) {
+		StringBuilder sb = new StringBuilder();
+		for (int f = 0; f < w.length; f++) {
+			if (f > 0) sb.append(',');
+			sb.append(String.format("%.4f", w[f]));
+		}
+		return sb.toString();
+	}
+
+	private static void report(Fit fit, double[] before, double[] after, double seconds) {
+		System.out.printf("%d positions in %.1f s (%.0f positions/s)%n", fit.getCount(), seconds,
+				fit.getCount() / seconds);
+		for (int f = 0; f < Evaluator.FEATURES; f++) {
+			System.out.printf("  %-10s %9.4f -> %9.4f%n", Evaluator.FEATURE_NAMES[f], before[f], after[f]);
+		}
+		System.out.printf("  rmse       %9.3f -> %9.3f%n", fit.rmse(before), fit.rmse(after));
+		System.out.println("-weights " + format(after));
+	}
+
+	/**
+	 * Runs the tool
+	 * @param args the command line, see the class description
+	 * @throws Exception if the arguments are invalid or a file fails
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: EvalTuner generate|fit|tune [-pits N] [-variant kalah|oware] [-nocapture]"
+					+ " [-stones N] [-games N] [-epsilon P] [-threads N] [-seed N] [-weights w,w,w,w,w]"
+					+ " [-iterations N] file...");
+			System.exit(2);
+		}
+		String command = args[0];
+		int pits = 6;
+		MancalaRules.Variant variant = MancalaRules.Variant.KALAH;
+		boolean capture = true;
+		int stones = 4;
+		int games = 100000;
+		double epsilon = 0.1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = System.nanoTime();
+		double[] weights = Evaluator.DEFAULT_WEIGHTS;
+		int iterations = 5;
+		int i = 1;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			switch (args[i]) {
+			case "-pits": pits = Integer.parseInt(args[++i]); break;
+			case "-variant": variant = MancalaRules.Variant.valueOf(args[++i].toUpperCase()); break;
+			case "-nocapture": capture = false; break;
+			case "-stones": stones = Integer.parseInt(args[++i]); break;
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-epsilon": epsilon = Double.parseDouble(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-iterations": iterations = Integer.parseInt(args[++i]); break;
+			case "-weights":
+				String[] parts = args[++i].split(",");
+				weights = new double[parts.length];
+				for (int f = 0; f < parts.length; f++) {
+					weights[f] = Double.parseDouble(parts[f]);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (i == args.length) {
+			throw new IllegalArgumentException("No file given");
+		}
+		EvalTuner tuner = new EvalTuner(MancalaRules.of(pits, variant, capture), threads);
+		long start = System.nanoTime();
+		if (command.equals("generate")) {
+			long n = tuner.generate(Paths.get(args[i]), games, stones, weights, epsilon, seed);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%d games, %d positions in %.1f s (%.0f positions/s)%n", games, n, seconds, n / seconds);
+		} else if (command.equals("fit")) {
+			List<Path> files = new ArrayList<>();
+			for (; i < args.length; i++) {
+				files.add(Paths.get(args[i]));
+			}
+			Fit fit = tuner.fit(files);
+			report(fit, weights, fit.solve(), (System.nanoTime() - start) / 1e9);
+		} else if (command.equals("tune")) {
+			Path dir = Paths.get(args[i]);
+			Files.createDirectories(dir);
+			for (int round = 0; round < iterations; round++) {
+				Path file = dir.resolve(String.format("selfplay-%02d.bin", round));
+				start = System.nanoTime();
+				long n = tuner.generate(file, games, stones, weights, epsilon, seed + round * 1000003L);
+				System.out.printf("round %d: %d positions played in %.1f s%n", round, n,
+						(System.nanoTime() - start) / 1e9);
+				start = System.nanoTime();
+				Fit fit = tuner.fit(List.of(file));
+				double[] next = fit.solve();
+				report(fit, weights, next, (System.nanoTime() - start) / 1e9);
+				weights = next;
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown command: " + command);
+		}
+	}
+}
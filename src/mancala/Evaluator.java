@@ -0,0 +1,179 @@
+package mancala;
+
+import java.util.Arrays;
+
+/**
+ * Weighted heuristic evaluation of a position, from the point of view of the player to move.
+ * The features are differences between the player and the opponent: stones in the mancala,
+ * stones in the row, pits that can be moved, the most stones a single move captures and
+ * the moves that end in the own mancala. Threats are found by playing each move on a scratch
+ * board, so they are exact for every variant of MancalaRules.
+ * An Evaluator keeps scratch boards and must only be used by one thread at a time.
+ * @author TeamNemo
+ *
+ */
+public class Evaluator {
+	public static final int STORE = 0;
+	public static final int STONES = 1;
+	public static final int MOBILITY = 2;
+	public static final int CAPTURE = 3;
+	public static final int EXTRA_TURN = 4;
+	public static final int FEATURES = 5;
+	public static final String[] FEATURE_NAMES = { "store", "stones", "mobility", "capture", "extraTurn" };
+	/** Hand-tuned weights, used until tuned ones are given. */
+	public static final double[] DEFAULT_WEIGHTS = { 1.0, 0.25, 0.1, 0.5, 0.75 };
+	private MancalaRules rules;
+	private double[] weights;
+	private double[] features;
+	private int[] scratch;
+	private int[] moveScratch;
+
+	/**
+	 * Constructor for the Evaluator class
+	 * @param rules the rules positions are played by
+	 * @param weights FEATURES weights, copied
+	 */
+	public Evaluator(MancalaRules rules, double[] weights) {
+		if (weights.length != FEATURES) {
+			throw new IllegalArgumentException("Expected " + FEATURES + " weights, got " + weights.length);
+		}
+		this.rules = rules;
+		this.weights = weights.clone();
+		features = new double[FEATURES];
+		scratch = new int[rules.getSize()];
+		moveScratch = new int[rules.getSize()];
+	}
+
+	/**
+	 * Returns the rules positions are played by
+	 * @return the rules
+	 */
+	public MancalaRules getRules() {
+		return rules;
+	}
+
+	/**
+	 * Returns the weights
+	 * @return a copy of the weights
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+
+	/**
+	 * Computes the features of a position
+	 * @param board the board, not changed
+	 * @param playerA true if player A is to move
+	 * @param out receives FEATURES values
+	 */
+	public void features(int[] board, boolean playerA, double[] out) {
+		int own = playerA ? rules.getMancalaA() : rules.getMancalaB();
+		int opp = playerA ? rules.getMancalaB() : rules.getMancalaA();
+		out[STORE] = board[own] - board[opp];
+		Arrays.fill(out, STONES, FEATURES, 0);
+		side(board, playerA, out, 1);
+		side(board, !playerA, out, -1);
+	}
+
+	/**
+	 * Adds the row features of one player with the given sign
+	 */
+	private void side(int[] board, boolean playerA, double[] out, int sign) {
+		int first = rules.firstPit(playerA);
+		int stones = 0;
+		int mobility = 0;
+		int bestCapture = 0;
+		int extraTurns = 0;
+		for (int i = first; i < first + rules.getPits(); i++) {
+			if (board[i] <= 0) continue;
+			stones += board[i];
+			mobility++;
+			System.arraycopy(board, 0, scratch, 0, scratch.length);
+			int result = rules.sow(scratch, playerA, i);
+			if ((result & MancalaRules.EXTRA_TURN) != 0) {
+				extraTurns++;
+			}
+			if ((result & MancalaRules.CAPTURE) != 0 && (result & MancalaRules.GAME_END) == 0) {
+				bestCapture = Math.max(bestCapture, captured(board, playerA, i));
+			}
+		}
+		out[STONES] += sign * stones;
+		out[MOBILITY] += sign * mobility;
+		out[CAPTURE] += sign * bestCapture;
+		out[EXTRA_TURN] += sign * extraTurns;
+	}
+
+	/**
+	 * Returns how many stones a move took from the opponent's row, with the move played on scratch:
+	 * the stones the row had plus those sown into it, minus those it has left
+	 */
+	private int captured(int[] board, boolean playerA, int index) {
+		int first = rules.firstPit(!playerA);
+		int last = first + rules.getPits();
+		int taken = 0;
+		for (int i = first; i < last; i++) {
+			taken += board[i] - scratch[i];
+		}
+		for (int n = board[index], i = index; n > 0; n--) {
+			i = rules.next(i, playerA, index);
+			if (i >= first && i < last) taken++;
+		}
+		return taken;
+	}
+
+	/**
+	 * Evaluates a position
+	 * @param board the board, not changed
+	 * @param playerA true if player A is to move
+	 * @return the weighted sum of the features, higher is better for the player to move
+	 */
+	public double evaluate(int[] board, boolean playerA) {
+		features(board, playerA, features);
+		double value = 0;
+		for (int f = 0; f < FEATURES; f++) {
+			value += weights[f] * features[f];
+		}
+		return value;
+	}
+
+	/**
+	 * Evaluates the position of a 6-pit Kalah game for the player to move
+	 * @param game the game
+	 * @return the weighted sum of the features, higher is better for the player to move
+	 */
+	public double evaluate(DataModel game) {
+		return evaluate(game.getBoard(), game.getIsPlayerA());
+	}
+
+	/**
+	 * Picks the move with the best evaluation after it is played, one ply deep
+	 * @param board the board, not changed
+	 * @param playerA true if player A is to move
+	 * @return the board index of the best pit, -1 if the player cannot move
+	 */
+	public int bestMove(int[] board, boolean playerA) {
+		int first = rules.firstPit(playerA);
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int i = first; i < first + rules.getPits(); i++) {
+			if (board[i] <= 0) continue;
+			System.arraycopy(board, 0, moveScratch, 0, moveScratch.length);
+			int result = rules.sow(moveScratch, playerA, i);
+			double value;
+			if ((result & MancalaRules.GAME_END) != 0) {
+				int own = playerA ? rules.getMancalaA() : rules.getMancalaB();
+				int opp = playerA ? rules.getMancalaB() : rules.getMancalaA();
+				value = 1000.0 * Integer.signum(moveScratch[own] - moveScratch[opp]);
+			} else if ((result & MancalaRules.EXTRA_TURN) != 0) {
+				value = evaluate(moveScratch, playerA);
+			} else {
+				value = -evaluate(moveScratch, !playerA);
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				best = i;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,130 @@
+package mancala;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Single frame clock for all animations in the GUI.
+ * Runs on the Event Dispatch Thread at about 60 frames per second and only while
+ * an animation is active, plus one idle frame after it. Late timer ticks are coalesced,
+ * and tasks that do not fit into the time budget of a frame are carried over to the next one.
+ * @author TeamNemo
+ *
+ */
+public class FrameScheduler {
+	private static final int FRAME_MILLIS = 1000 / 60;
+	// Work allowed per frame before the remaining tasks wait for the next frame.
+	private static final long FRAME_BUDGET_NANOS = 8000000L;
+	private static FrameScheduler instance;
+
+	/**
+	 * A piece of work that is called once per frame
+	 */
+	public interface FrameTask {
+		/**
+		 * Advances the task to the given time
+		 * @param now the frame time from System.nanoTime()
+		 * @return true if the task needs more frames, false if it is finished
+		 */
+		boolean frame(long now);
+	}
+
+	private Timer timer;
+	private List<FrameTask> tasks;
+	private int next;
+
+	/**
+	 * Constructor for the FrameScheduler class
+	 */
+	private FrameScheduler() {
+		tasks = new ArrayList<>();
+		timer = new Timer(FRAME_MILLIS, e -> tick());
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Returns the frame scheduler shared by all views
+	 * @return the shared frame scheduler
+	 */
+	public static FrameScheduler getInstance() {
+		if (instance == null) {
+			instance = new FrameScheduler();
+		}
+		return instance;
+	}
+
+	/**
+	 * Schedules a task to be called on every frame until it is finished.
+	 * Scheduling a task that is already running has no effect.
+	 * @param task the task to schedule
+	 */
+	public void schedule(FrameTask task) {
+		if (!tasks.contains(task)) {
+			tasks.add(task);
+		}
+		if (!timer.isRunning()) {
+			timer.start();
+		}
+	}
+
+	/**
+	 * Runs an action once on the next frame; may be called from any thread.
+	 * When no frame is running, the action starts one at once instead of waiting a frame
+	 * for the first tick; the timer then holds back further actions until the next frame.
+	 * As an Executor this delivers DataModel notifications at the frame rate.
+	 * @param action the action to run on the Event Dispatch Thread
+	 */
+	public void runNextFrame(Runnable action) {
+		SwingUtilities.invokeLater(() -> {
+			if (!timer.isRunning()) {
+				action.run();
+				// The next tick stops the timer again if nothing else is scheduled.
+				if (!timer.isRunning()) timer.start();
+				return;
+			}
+			schedule(now -> {
+				action.run();
+				return false;
+			});
+		});
+	}
+
+	/**
+	 * Removes a task before it has finished
+	 * @param task the task to cancel
+	 */
+	public void cancel(FrameTask task) {
+		int i = tasks.indexOf(task);
+		if (i < 0) return;
+		tasks.remove(i);
+		if (i < next) next--;
+	}
+
+	/**
+	 * Runs one frame. Tasks run round robin, starting where the previous frame ran out of budget.
+	 */
+	private void tick() {
+		if (tasks.isEmpty()) {
+			// A whole frame without work; until then runNextFrame must not start a frame early.
+			next = 0;
+			timer.stop();
+			return;
+		}
+		long now = System.nanoTime();
+		long deadline = now + FRAME_BUDGET_NANOS;
+		int count = tasks.size();
+		for (int n = 0; n < count && !tasks.isEmpty(); n++) {
+			if (next >= tasks.size()) next = 0;
+			FrameTask task = tasks.get(next);
+			if (task.frame(now)) {
+				next++;
+			} else {
+				tasks.remove(next);
+			}
+			if (System.nanoTime() > deadline) break;
+		}
+	}
+}
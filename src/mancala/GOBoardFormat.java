@@ -27,6 +27,14 @@ public class GOBoardFormat implements BoardFormat {
         return img;
 	}
 	
+	/**
+	 * Returns the name of this format.
+	 */
+	@Override
+	public String getName() {
+		return "GO Style";
+	}
+	
 	/**
 	 * Returns width of the board.
 	 */
@@ -36,6 +44,14 @@ public class GOBoardFormat implements BoardFormat {
 	}
 	
 	
+	/**
+	 * Returns height of the board.
+	 */
+	@Override
+	public int getHeight() {
+		return 500;
+	}
+	
 	/**
 	 * Returns the left position of mancala A.
 	 */
@@ -0,0 +1,461 @@
+package mancala;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe, append-only journal of the changes made to any number of games.
+ * Appends only copy a 16 byte record into memory; a writer thread writes everything
+ * appended meanwhile with one write and one fsync (group commit), so thousands of
+ * games writing at once share the cost of each fsync.
+ * The journal is split into segments. Whenever a segment is full, a background thread
+ * replays it onto the previous snapshot and writes a new compacted snapshot, so a
+ * restart only replays the records of about one segment.
+ * @author TeamNemo
+ *
+ */
+public class GameJournal implements Closeable {
+	public static final byte INIT = 1;
+	public static final byte MOVE = 2;
+	public static final byte NEXT = 3;
+	public static final byte UNDO = 4;
+	public static final byte REMOVE = 5;
+	// game id (8), op (1), two arguments (1 each), padding (1), CRC32 of the first 12 bytes (4)
+	private static final int RECORD_BYTES = 16;
+	private static final int SNAPSHOT_MAGIC = 0x4d4e4353;
+
+	private Path dir;
+	private int recordsPerSegment;
+	private final Object lock = new Object();
+	private ByteBuffer pending;
+	private ByteBuffer writing;
+	private long appended;
+	private long durable;
+	private boolean closed;
+	private IOException failure;
+	private FileChannel channel;
+	private int segment;
+	private long segmentRecords;
+	private Thread writer;
+	private ExecutorService compactor;
+	private CRC32 crc;
+
+	private Map<Long, DataModel> recoveredGames;
+	private long recoveredRecords;
+	private long recoveryNanos;
+
+	/**
+	 * Constructor for the GameJournal class. Recovers the games stored in the directory
+	 * and starts a new segment for the appends that follow.
+	 * @param dir the directory of the journal, created if missing
+	 * @param recordsPerSegment the number of records after which a segment is compacted,
+	 * which bounds the records replayed on recovery
+	 * @throws IOException if the journal cannot be read or created
+	 */
+	public GameJournal(Path dir, int recordsPerSegment) throws IOException {
+		this.dir = dir;
+		this.recordsPerSegment = recordsPerSegment;
+		Files.createDirectories(dir);
+		crc = new CRC32();
+		pending = ByteBuffer.allocate(RECORD_BYTES * 1024);
+		writing = ByteBuffer.allocate(RECORD_BYTES * 1024);
+
+		long start = System.nanoTime();
+		int snapshot = latest("snapshot-", ".dat");
+		recoveredGames = snapshot < 0 ? new HashMap<>() : readSnapshot(snapshot);
+		int last = snapshot;
+		boolean replayed = false;
+		for (int n : list("journal-", ".log")) {
+			if (n >= snapshot) {
+				recoveredRecords += replay(n, recoveredGames);
+				last = Math.max(last, n);
+				replayed = true;
+			}
+		}
+		recoveryNanos = System.nanoTime() - start;
+
+		segment = last + 1;
+		channel = openSegment(segment);
+		compactor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "journal-compactor");
+			t.setDaemon(true);
+			return t;
+		});
+		if (replayed) {
+			// Fold what was just replayed into a snapshot so the next recovery is short again.
+			int upTo = segment;
+			compactor.execute(() -> compact(upTo));
+		}
+		writer = new Thread(this::writeLoop, "journal-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the games rebuilt from the snapshot and the journal when this journal was opened
+	 * @return the recovered games by id, without listeners or journal attached
+	 */
+	public Map<Long, DataModel> getRecoveredGames() {
+		return recoveredGames;
+	}
+
+	/**
+	 * Returns the number of journal records replayed on recovery
+	 * @return the number of replayed records
+	 */
+	public long getRecoveredRecords() {
+		return recoveredRecords;
+	}
+
+	/**
+	 * Returns how long the recovery took, including reading the snapshot
+	 * @return the recovery time in nanoseconds
+	 */
+	public long getRecoveryNanos() {
+		return recoveryNanos;
+	}
+
+	/**
+	 * Appends a record without waiting for it to reach the disk
+	 * @param gameId the game that changed
+	 * @param op INIT, MOVE, NEXT, UNDO or REMOVE
+	 * @param a the first argument: the number of stones for INIT (up to 255), the row for MOVE
+	 * @param b the second argument: the pit for MOVE
+	 * @return the sequence number of the record, to be passed to sync
+	 * @throws UncheckedIOException if an earlier write, fsync or compaction failed;
+	 * records appended after that would never reach the disk
+	 */
+	public long append(long gameId, byte op, int a, int b) {
+		synchronized (lock) {
+			checkWritable();
+			if (pending.remaining() < RECORD_BYTES) {
+				ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+				pending.flip();
+				bigger.put(pending);
+				pending = bigger;
+			}
+			int start = pending.position();
+			pending.putLong(gameId).put(op).put((byte) a).put((byte) b).put((byte) 0);
+			crc.reset();
+			crc.update(pending.array(), start, RECORD_BYTES - 4);
+			pending.putInt((int) crc.getValue());
+			appended++;
+			lock.notifyAll();
+			return appended;
+		}
+	}
+
+	/**
+	 * Checks that the journal still accepts records, so that a change can be refused before it is made
+	 * @throws IllegalStateException if the journal is closed
+	 * @throws UncheckedIOException if an earlier write, fsync or compaction failed
+	 */
+	public void checkWritable() {
+		synchronized (lock) {
+			if (closed) {
+				throw new IllegalStateException("Journal is closed");
+			}
+			if (failure != null) {
+				throw new UncheckedIOException(failure);
+			}
+		}
+	}
+
+	/**
+	 * Waits until a record and all records before it are on the disk
+	 * @param sequence the sequence number returned by append
+	 * @throws IOException if the journal could not be written
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void sync(long sequence) throws IOException, InterruptedException {
+		synchronized (lock) {
+			while (durable < sequence && failure == null) {
+				lock.wait();
+			}
+			if (failure != null) throw failure;
+		}
+	}
+
+	/**
+	 * Journals that a game was finished, so it is left out of later snapshots
+	 * @param gameId the game to remove
+	 * @return the sequence number of the record
+	 */
+	public long remove(long gameId) {
+		return append(gameId, REMOVE, 0, 0);
+	}
+
+	/**
+	 * Writes the remaining records to the disk and stops the background threads
+	 * @throws IOException if the journal could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) return;
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			writer.join();
+			compactor.shutdown();
+			compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Writes the pending records in batches, one fsync per batch
+	 */
+	private void writeLoop() {
+		while (true) {
+			long target;
+			synchronized (lock) {
+				while (pending.position() == 0 && !closed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.position() == 0) return;
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				pending.clear();
+				target = appended;
+			}
+			try {
+				writing.flip();
+				segmentRecords += writing.remaining() / RECORD_BYTES;
+				while (writing.hasRemaining()) {
+					channel.write(writing);
+				}
+				channel.force(false);
+				writing.clear();
+				if (segmentRecords >= recordsPerSegment) {
+					rollSegment();
+				}
+			} catch (IOException e) {
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+			synchronized (lock) {
+				durable = target;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Closes the full segment, starts the next one and compacts the closed one in the background
+	 * @throws IOException if the next segment cannot be created
+	 */
+	private void rollSegment() throws IOException {
+		channel.close();
+		segment++;
+		segmentRecords = 0;
+		channel = openSegment(segment);
+		int upTo = segment;
+		compactor.execute(() -> compact(upTo));
+	}
+
+	/**
+	 * Writes a snapshot that covers every segment before the given one and deletes what it replaces
+	 * @param upTo the first segment not covered by the snapshot
+	 */
+	private void compact(int upTo) {
+		try {
+			int snapshot = latest("snapshot-", ".dat");
+			if (snapshot >= upTo) return;
+			Map<Long, DataModel> games = snapshot < 0 ? new HashMap<>() : readSnapshot(snapshot);
+			for (int n : list("journal-", ".log")) {
+				if (n >= snapshot && n < upTo) {
+					replay(n, games);
+				}
+			}
+			writeSnapshot(upTo, games);
+			for (int n : list("snapshot-", ".dat")) {
+				if (n < upTo) Files.deleteIfExists(file("snapshot-", n, ".dat"));
+			}
+			for (int n : list("journal-", ".log")) {
+				if (n < upTo) Files.deleteIfExists(file("journal-", n, ".log"));
+			}
+		} catch (IOException e) {
+			// The segments stay in place, so nothing written is lost, but the journal stops
+			// accepting records: a disk that fails here is likely to fail the writer next.
+			synchronized (lock) {
+				if (failure == null) failure = e;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Applies the records of one segment to the games. A torn record ends the segment.
+	 * @param n the segment number
+	 * @param games the games to update
+	 * @return the number of records applied
+	 * @throws IOException if the segment cannot be read
+	 */
+	private long replay(int n, Map<Long, DataModel> games) throws IOException {
+		byte[] bytes = Files.readAllBytes(file("journal-", n, ".log"));
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		CRC32 check = new CRC32();
+		long count = 0;
+		while (buf.remaining() >= RECORD_BYTES) {
+			int start = buf.position();
+			check.reset();
+			check.update(bytes, start, RECORD_BYTES - 4);
+			if (buf.getInt(start + RECORD_BYTES - 4) != (int) check.getValue()) break;
+			long gameId = buf.getLong();
+			byte op = buf.get();
+			int a = buf.get() & 0xff;
+			int b = buf.get() & 0xff;
+			buf.position(start + RECORD_BYTES);
+			apply(games, gameId, op, a, b);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Applies one record through the same DataModel methods that produced it
+	 */
+	private static void apply(Map<Long, DataModel> games, long gameId, byte op, int a, int b) {
+		if (op == REMOVE) {
+			games.remove(gameId);
+			return;
+		}
+		DataModel game = games.computeIfAbsent(gameId, id -> new DataModel());
+		if (op == INIT) {
+			game.init(a);
+		} else if (op == MOVE) {
+			game.distributeStones(a, b);
+		} else if (op == NEXT) {
+			game.nextPlayer();
+		} else if (op == UNDO) {
+			game.undoATurn();
+		}
+	}
+
+	private void writeSnapshot(int n, Map<Long, DataModel> games) throws IOException {
+		Path tmp = file("snapshot-", n, ".tmp");
+		ByteBuffer state = ByteBuffer.allocate(DataModel.STATE_BYTES);
+		CheckedOutputStream checked;
+		try (OutputStream file = Files.newOutputStream(tmp)) {
+			checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(games.size());
+			for (Map.Entry<Long, DataModel> e : games.entrySet()) {
+				out.writeLong(e.getKey());
+				e.getValue().writeState(state, 0);
+				out.write(state.array());
+			}
+			out.writeLong(checked.getChecksum().getValue());
+			out.flush();
+		}
+		try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+			c.force(true);
+		}
+		Files.move(tmp, file("snapshot-", n, ".dat"), StandardCopyOption.ATOMIC_MOVE);
+		// The rename is only durable once the directory entry is on the disk.
+		try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+			d.force(true);
+		}
+	}
+
+	private Map<Long, DataModel> readSnapshot(int n) throws IOException {
+		Map<Long, DataModel> games = new HashMap<>();
+		ByteBuffer state = ByteBuffer.allocate(DataModel.STATE_BYTES);
+		try (InputStream file = Files.newInputStream(file("snapshot-", n, ".dat"))) {
+			CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+			DataInputStream in = new DataInputStream(checked);
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a journal snapshot: " + file("snapshot-", n, ".dat"));
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				long gameId = in.readLong();
+				in.readFully(state.array());
+				DataModel game = new DataModel();
+				game.readState(state, 0);
+				games.put(gameId, game);
+			}
+			long expected = checked.getChecksum().getValue();
+			if (in.readLong() != expected) {
+				throw new IOException("Corrupt journal snapshot: " + file("snapshot-", n, ".dat"));
+			}
+		}
+		return games;
+	}
+
+	private FileChannel openSegment(int n) throws IOException {
+		FileChannel c = FileChannel.open(file("journal-", n, ".log"), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		// Make the new file itself durable, not only its contents.
+		try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+			d.force(true);
+		} catch (IOException e) {
+			// Not every platform can sync a directory.
+		}
+		return c;
+	}
+
+	private Path file(String prefix, int n, String suffix) {
+		return dir.resolve(String.format("%s%08d%s", prefix, n, suffix));
+	}
+
+	private int latest(String prefix, String suffix) throws IOException {
+		List<Integer> numbers = list(prefix, suffix);
+		return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+	}
+
+	private List<Integer> list(String prefix, String suffix) throws IOException {
+		List<Integer> numbers = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+			for (Path f : files) {
+				String name = f.getFileName().toString();
+				try {
+					numbers.add(Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException e) {
+					// Not one of ours.
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+}
@@ -0,0 +1,193 @@
+package mancala;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recorded game: the starting stones and every input made, in order.
+ * A record is written as one line, so an archive is a text file with one game per line:
+ * the number of stones, then A0..A5 or B0..B5 for a move from a pit of row A or B,
+ * N for next player and U for undo, separated by spaces, e.g. "4 B2 B0 N A5 U A4 N".
+ * @author TeamNemo
+ *
+ */
+public class GameRecord {
+	public static final int NEXT = 12;
+	public static final int UNDO = 13;
+	private int stones;
+	private byte[] ops; // 0..11: row * 6 + pit, NEXT or UNDO
+	private int size;
+
+	/**
+	 * Constructor for an empty GameRecord
+	 * @param stones the number of stones per pit at the start
+	 */
+	public GameRecord(int stones) {
+		this.stones = stones;
+		ops = new byte[32];
+	}
+
+	/**
+	 * Parses a record from its one-line form
+	 * @param line the record
+	 * @return the parsed record
+	 * @throws IllegalArgumentException if the line is not a valid record
+	 */
+	public static GameRecord parse(String line) {
+		String[] parts = line.trim().split("\\s+");
+		GameRecord record;
+		try {
+			record = new GameRecord(Integer.parseInt(parts[0]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number of stones: " + parts[0]);
+		}
+		for (int i = 1; i < parts.length; i++) {
+			String op = parts[i];
+			if (op.equals("N")) {
+				record.add(NEXT);
+			} else if (op.equals("U")) {
+				record.add(UNDO);
+			} else if (op.length() == 2 && (op.charAt(0) == 'A' || op.charAt(0) == 'B')
+					&& op.charAt(1) >= '0' && op.charAt(1) <= '5') {
+				record.addMove(op.charAt(0) == 'A' ? 0 : 1, op.charAt(1) - '0');
+			} else {
+				throw new IllegalArgumentException("Invalid record entry: " + op);
+			}
+		}
+		return record;
+	}
+
+	/**
+	 * Reads every record of an archive file, skipping empty lines and lines starting with #
+	 * @param file the archive
+	 * @return the records in file order
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a line is not a valid record
+	 */
+	public static List<GameRecord> readAll(Path file) throws IOException {
+		List<GameRecord> records = new ArrayList<>();
+		try (BufferedReader in = Files.newBufferedReader(file)) {
+			String line;
+			int n = 0;
+			while ((line = in.readLine()) != null) {
+				n++;
+				if (line.isBlank() || line.startsWith("#")) continue;
+				try {
+					records.add(parse(line));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(file + ":" + n + ": " + e.getMessage());
+				}
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Records a move
+	 * @param x the row, 0 for player A and 1 for player B, as in DataModel.distributeStones
+	 * @param y the pit within the row
+	 */
+	public void addMove(int x, int y) {
+		add(x * 6 + y);
+	}
+
+	/**
+	 * Records an input
+	 * @param op a move (row * 6 + pit), NEXT or UNDO
+	 */
+	public void add(int op) {
+		if (size == ops.length) {
+			ops = Arrays.copyOf(ops, size * 2);
+		}
+		ops[size++] = (byte) op;
+	}
+
+	/**
+	 * Returns the number of stones per pit at the start
+	 * @return the number of stones per pit
+	 */
+	public int getStones() {
+		return stones;
+	}
+
+	/**
+	 * Returns the number of recorded inputs
+	 * @return the number of inputs
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a recorded input
+	 * @param i the index of the input
+	 * @return a move (row * 6 + pit), NEXT or UNDO
+	 */
+	public int get(int i) {
+		return ops[i];
+	}
+
+	/**
+	 * Applies a recorded input to a game
+	 * @param game the game, initialized with getStones() and the inputs before i
+	 * @param i the index of the input
+	 * @return true if the game accepted the input
+	 */
+	public boolean apply(DataModel game, int i) {
+		int op = ops[i];
+		if (op == NEXT) {
+			game.nextPlayer();
+			return true;
+		} else if (op == UNDO) {
+			return game.undoATurn();
+		}
+		return game.distributeStones(op / 6, op % 6);
+	}
+
+	/**
+	 * Applies a range of recorded inputs in one transaction, so that the listeners of
+	 * the game are notified once for the whole range
+	 * @param game the game, initialized with getStones() and the inputs before from
+	 * @param from the index of the first input
+	 * @param to the index after the last input
+	 * @return the number of inputs the game accepted
+	 */
+	public int fastForward(DataModel game, int from, int to) {
+		int accepted = 0;
+		game.beginTransaction();
+		try {
+			for (int i = from; i < to; i++) {
+				if (apply(game, i)) accepted++;
+			}
+		} finally {
+			game.endTransaction();
+		}
+		return accepted;
+	}
+
+	/**
+	 * Returns the one-line form of the record
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(stones);
+		for (int i = 0; i < size; i++) {
+			int op = ops[i];
+			sb.append(' ');
+			if (op == NEXT) {
+				sb.append('N');
+			} else if (op == UNDO) {
+				sb.append('U');
+			} else {
+				sb.append(op < 6 ? 'A' : 'B').append(op % 6);
+			}
+		}
+		return sb.toString();
+	}
+}
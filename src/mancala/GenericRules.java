@@ -0,0 +1,88 @@
+package mancala;
+
+/**
+ * Rules for any number of pits per side and every variant.
+ * The board size, the mancalas and the variant are final fields, so the JIT treats them
+ * like constants once an instance is hot; each variant has its own sowing loop without
+ * per-stone variant checks.
+ * @author TeamNemo
+ *
+ */
+final class GenericRules extends MancalaRules {
+	private final int storeB;
+
+	/**
+	 * Constructor for the GenericRules class. Use MancalaRules.of.
+	 * @param pits the number of pits per side
+	 * @param variant how stones are sown and captured
+	 * @param capture false to play the variant without captures
+	 */
+	GenericRules(int pits, Variant variant, boolean capture) {
+		super(pits, variant, capture);
+		storeB = pits + 1;
+	}
+
+	@Override
+	public int sow(int[] board, boolean playerA, int index) {
+		int result = variant == Variant.KALAH ? sowKalah(board, playerA, index) : sowOware(board, playerA, index);
+		if (isGameEnd(board)) {
+			sweep(board);
+			result |= GAME_END;
+		}
+		return result;
+	}
+
+	/**
+	 * Sows into both rows and the own mancala, the same way as the 6-pit rules
+	 */
+	private int sowKalah(int[] board, boolean playerA, int i) {
+		int skip = playerA ? storeB : 0;
+		int n = board[i];
+		board[i] = 0;
+		while (n > 0) {
+			i = i + 1 == size ? 0 : i + 1;
+			if (i == skip) continue;
+			n--;
+			board[i]++;
+		}
+		if (i == 0 || i == storeB) {
+			return EXTRA_TURN;
+		}
+		if (capture && board[i] == 1) {
+			// The last stone landed in an empty pit: it takes itself and the opposite pit.
+			int k = playerA ? 0 : storeB;
+			board[k] += 1 + board[size - i];
+			board[size - i] = 0;
+			board[i] = 0;
+			return CAPTURE;
+		}
+		return 0;
+	}
+
+	/**
+	 * Sows into the pits only, skipping the emptied pit on every lap, then captures
+	 * backwards from the last pit while the opponent's pits hold 2 or 3 stones
+	 */
+	private int sowOware(int[] board, boolean playerA, int origin) {
+		int n = board[origin];
+		board[origin] = 0;
+		int i = origin;
+		while (n > 0) {
+			i = i + 1 == size ? 0 : i + 1;
+			if (i == 0 || i == storeB || i == origin) continue;
+			n--;
+			board[i]++;
+		}
+		if (!capture) return 0;
+		int first = firstPit(!playerA);
+		int k = playerA ? 0 : storeB;
+		int result = 0;
+		while (i >= first && i < first + pits && (board[i] == 2 || board[i] == 3)) {
+			board[k] += board[i];
+			board[i] = 0;
+			result = CAPTURE;
+			i--;
+		}
+		return result;
+	}
+}
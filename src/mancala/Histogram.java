@@ -0,0 +1,96 @@
+package mancala;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets.
+ * Recording is a few atomic adds, so it can sit on paint and model hot paths.
+ * @author TeamNemo
+ *
+ */
+public class Histogram {
+	private AtomicLongArray buckets;
+	private LongAdder count;
+	private LongAdder total;
+	private AtomicLong max;
+
+	/**
+	 * Constructor for the Histogram class
+	 */
+	public Histogram() {
+		buckets = new AtomicLongArray(64);
+		count = new LongAdder();
+		total = new LongAdder();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records one duration
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+		count.increment();
+		total.add(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Returns the number of recorded durations
+	 * @return the number of recorded durations
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of the recorded durations
+	 * @return the mean in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : total.sum() / n;
+	}
+
+	/**
+	 * Returns the longest recorded duration
+	 * @return the maximum in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns an upper bound of the given percentile, accurate to a factor of two
+	 * @param percentile the percentile between 0 and 100
+	 * @return the percentile in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) return 0;
+		long rank = (long) Math.ceil(n * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < 64; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(max.get(), i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded durations
+	 */
+	public void reset() {
+		for (int i = 0; i < 64; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+}
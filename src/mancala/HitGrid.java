@@ -0,0 +1,63 @@
+package mancala;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed lookup grid that maps a point of the board to the pit under it.
+ * The grid is built once per format, so a lookup is a single array read
+ * instead of a Shape.contains test against every pit.
+ * @author TeamNemo
+ *
+ */
+public class HitGrid {
+	// Size of one grid cell in board format pixels.
+	private static final int CELL_SIZE = 2;
+	private int columns;
+	private int rows;
+	private byte[] cells;
+
+	/**
+	 * Constructor for the HitGrid class. Samples the center of every cell against the pit shapes.
+	 * @param width the width of the board
+	 * @param height the height of the board
+	 * @param pits the pits indexed like the DataModel board, null entries are skipped
+	 */
+	public HitGrid(int width, int height, PitShape[] pits) {
+		columns = (width + CELL_SIZE - 1) / CELL_SIZE;
+		rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+		cells = new byte[columns * rows];
+		Arrays.fill(cells, (byte) -1);
+		for (int index = 0; index < pits.length; index++) {
+			PitShape p = pits[index];
+			if (p == null) continue;
+			// Only the cells inside the pit's bounding box can be hit.
+			int left = Math.max(0, p.getX() / CELL_SIZE);
+			int top = Math.max(0, p.getY() / CELL_SIZE);
+			int right = Math.min(columns - 1, (p.getX() + p.getWidth()) / CELL_SIZE);
+			int bottom = Math.min(rows - 1, (p.getY() + p.getHeight()) / CELL_SIZE);
+			for (int r = top; r <= bottom; r++) {
+				for (int c = left; c <= right; c++) {
+					double cx = (c + 0.5) * CELL_SIZE;
+					double cy = (r + 0.5) * CELL_SIZE;
+					if (p.getShape().contains(cx, cy)) {
+						cells[r * columns + c] = (byte) index;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the pit at the given point of the board
+	 * @param x the x-coordinate in board format pixels
+	 * @param y the y-coordinate in board format pixels
+	 * @return the index of the pit, -1 if the point is not on a pit
+	 */
+	public int pitAt(double x, double y) {
+		if (x < 0 || y < 0) return -1;
+		int c = (int) (x / CELL_SIZE);
+		int r = (int) (y / CELL_SIZE);
+		if (c >= columns || r >= rows) return -1;
+		return cells[r * columns + c];
+	}
+}
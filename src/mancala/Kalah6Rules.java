@@ -0,0 +1,70 @@
+package mancala;
+
+/**
+ * The 6-pit Kalah rules of DataModel with the board size and indexes as constants,
+ * so the sowing loop compiles to the same code as the original DataModel loop.
+ * @author TeamNemo
+ *
+ */
+final class Kalah6Rules extends MancalaRules {
+
+	/**
+	 * Constructor for the Kalah6Rules class. Use MancalaRules.KALAH.
+	 */
+	Kalah6Rules() {
+		super(6, Variant.KALAH, true);
+	}
+
+	/**
+	 * Sows exactly like DataModel always has: the opponent's mancala is skipped, the last
+	 * stone in the own mancala earns another move, and the last stone in an empty pit on
+	 * either side takes itself and the opposite pit into the mover's mancala.
+	 */
+	@Override
+	public int sow(int[] data, boolean isPlayerA, int i) {
+		int result = 0;
+		int n = data[i];
+		data[i] = 0;
+		while (n > 0) {
+			i = (i+1) % 14;
+			if (i == 0 && !isPlayerA) continue;
+			if (i == 7 && isPlayerA) continue;
+			n--;
+			if (n == 0) {
+				if (i == 0 || i == 7) {
+					result |= EXTRA_TURN;
+				} else if (data[i] == 0) {
+					int k = isPlayerA ? 0 : 7;
+					data[k] += 1 + data[14 - i];
+					data[14 - i] = 0;
+					// Will added to 0 later.
+					data[i] = -1;
+					result |= CAPTURE;
+				}
+			}
+			data[i]++;
+		}
+
+		if (isGameEnd(data)) {
+			for (i = 1; i <= 6; i++) {
+				data[7] += data[i];
+				data[i] = 0;
+			}
+			for (i = 8; i <= 13; i++) {
+				data[0] += data[i];
+				data[i] = 0;
+			}
+			result |= GAME_END;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks both rows without loops over a variable size
+	 */
+	@Override
+	public boolean isGameEnd(int[] data) {
+		return (data[1] | data[2] | data[3] | data[4] | data[5] | data[6]) <= 0
+				|| (data[8] | data[9] | data[10] | data[11] | data[12] | data[13]) <= 0;
+	}
+}
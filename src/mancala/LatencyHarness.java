@@ -0,0 +1,505 @@
+package mancala;
+
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeListener;
+
+/**
+ * End-to-end latency test of the GUI. It starts a MancalaGame with a fixed configuration
+ * instead of the dialog, then plays scripted random games by posting mouse events to the
+ * centers of the pits and to the Next and Undo buttons, the way a user's clicks arrive.
+ * The latency of an input runs from posting its mouse press until the end of the first
+ * paint that starts after the model has notified the views of the change. The frame time
+ * is the time between paints while a move is animated. Every paint of the frame is timed
+ * through the RepaintManager, so nothing in the views is changed for the test.
+ * The test fails if the 99th percentile of either exceeds its limit.
+ * With animation, a last scenario clicks two more moves while a move is still animated,
+ * and fails unless every move is animated, one after the other.
+ * Run it on a display, or under Xvfb on a machine without one:
+ * xvfb-run -a java mancala.LatencyHarness
+ * Without any display it runs offscreen: the game has no frame, and the RepaintManager
+ * paints the whole content into an image on the Event Dispatch Thread where Swing would
+ * paint the dirty regions. That still covers the event queue, the model, the frame clock
+ * and the paint code, but not the copy to the screen.
+ * Usage: LatencyHarness [-games N] [-stones N] [-seed N] [-warmup N] [-format easter|go]
+ *        [-max-latency MS] [-max-frame MS] [-no-animation]
+ * @author TeamNemo
+ *
+ */
+public class LatencyHarness {
+	private static final long QUIET_NANOS = 60_000_000L; // no paint for this long ends an input
+	private static final long FRAME_GAP_NANOS = 100_000_000L; // longer gaps are not frames
+	private static final long TIMEOUT_SECONDS = 10;
+	private static final int MAX_SETUP_INPUTS = 200; // inputs to find a position for checkQueuedInput
+	private MancalaGame game;
+	private DataModel model;
+	private BoardPanel board;
+	private SplittableRandom random;
+	private int stones;
+	private Samples latency;
+	private Samples paint;
+	private Samples frame;
+	// Written on the harness thread before an input is posted, read on the EDT.
+	private volatile long posted;
+	private volatile boolean armed;
+	// Written and read on the EDT only, except lastPaintEnd which the harness thread polls.
+	private long deliveredAt;
+	private volatile long lastPaintEnd;
+	private boolean recording;
+	private Semaphore responded;
+	private boolean offscreen;
+	private BufferedImage image; // the offscreen "screen"
+	private boolean paintScheduled;
+
+	/**
+	 * Exact percentiles of a small number of durations; a run records a few thousand at most
+	 */
+	static class Samples {
+		private long[] values = new long[256];
+		private int size;
+
+		void add(long nanos) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = nanos;
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Returns a percentile by the nearest-rank method
+		 * @param percentile the percentile between 0 and 100
+		 * @return the percentile in nanoseconds, 0 if nothing was recorded
+		 */
+		long percentile(double percentile) {
+			if (size == 0) return 0;
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int rank = (int) Math.ceil(size * percentile / 100);
+			return sorted[Math.max(0, rank - 1)];
+		}
+
+		String format() {
+			return String.format("n %5d  p50 %6.2f ms  p95 %6.2f ms  p99 %6.2f ms  max %6.2f ms", size,
+					percentile(50) / 1e6, percentile(95) / 1e6, percentile(99) / 1e6, percentile(100) / 1e6);
+		}
+	}
+
+	/**
+	 * Times every paint of the GUI, and paints into an image when there is no display
+	 */
+	private class TimingRepaintManager extends RepaintManager {
+		@Override
+		public void paintDirtyRegions() {
+			long start = System.nanoTime();
+			super.paintDirtyRegions();
+			long end = System.nanoTime();
+			painted(start, end);
+		}
+
+		@Override
+		public void addDirtyRegion(JComponent c, int x, int y, int w, int h) {
+			if (!offscreen) {
+				super.addDirtyRegion(c, x, y, w, h);
+			} else if (!paintScheduled) {
+				// Like Swing: one paint, later on the EDT, for all repaints until then.
+				// Only the EDT repaints in this harness, so the flag needs no lock.
+				paintScheduled = true;
+				SwingUtilities.invokeLater(LatencyHarness.this::paintOffscreen);
+			}
+		}
+	}
+
+	private void paintOffscreen() {
+		paintScheduled = false;
+		JComponent content = game.getContent();
+		long start = System.nanoTime();
+		if (image == null) {
+			image = new BufferedImage(content.getWidth(), content.getHeight(), BufferedImage.TYPE_INT_RGB);
+		}
+		Graphics2D g = image.createGraphics();
+		content.paint(g);
+		g.dispose();
+		painted(start, System.nanoTime());
+	}
+
+	/**
+	 * Constructor for the LatencyHarness class; must be called on the Event Dispatch Thread
+	 * @param stones the number of stones per pit
+	 * @param format the board format
+	 * @param animated false to show every move at once
+	 * @param seed the seed of the scripted games
+	 */
+	public LatencyHarness(int stones, BoardFormat format, boolean animated, long seed) {
+		offscreen = GraphicsEnvironment.isHeadless();
+		RepaintManager.setCurrentManager(new TimingRepaintManager());
+		game = new MancalaGame(stones, format);
+		model = game.getDataModel();
+		board = game.getBoard();
+		board.setAnimated(animated);
+		// Attached after the views, so it is called once they have taken the change.
+		model.attach(e -> {
+			if (armed && deliveredAt == 0) deliveredAt = System.nanoTime();
+		});
+		this.stones = stones;
+		random = new SplittableRandom(seed);
+		latency = new Samples();
+		paint = new Samples();
+		frame = new Samples();
+		responded = new Semaphore(0);
+	}
+
+	private void painted(long start, long end) {
+		if (recording) {
+			paint.add(end - start);
+			if (lastPaintEnd != 0 && end - lastPaintEnd < FRAME_GAP_NANOS && board.isAnimating()) {
+				frame.add(end - lastPaintEnd);
+			}
+		}
+		lastPaintEnd = end;
+		if (armed && deliveredAt != 0 && start >= deliveredAt) {
+			armed = false;
+			if (recording) latency.add(end - posted);
+			responded.release();
+		}
+	}
+
+	/**
+	 * Plays scripted games and records the latencies
+	 * @param games the number of games to finish
+	 * @param warmup the number of inputs to make before recording
+	 * @return the number of inputs made
+	 * @throws Exception if an input gets no response or the EDT fails
+	 */
+	public int play(int games, int warmup) throws Exception {
+		int inputs = 0;
+		waitQuiet();
+		for (int g = 0; g < games; ) {
+			if (inputs == warmup) {
+				onEdt(() -> {
+					recording = true;
+					return null;
+				});
+			}
+			// Decide on the EDT from the state the user would see.
+			Component target;
+			Point point;
+			int[] choice = onEdt(this::chooseInput);
+			if (choice[0] == 0) {
+				onEdt(() -> {
+					model.init(stones);
+					return null;
+				});
+				waitQuiet();
+				g++;
+				continue;
+			}
+			if (choice[0] == 1) {
+				target = board;
+				point = onEdt(() -> board.getPitCenter(choice[1]));
+				post(target, MouseEvent.MOUSE_MOVED, point, 0);
+			} else {
+				target = choice[0] == 2 ? game.getNextButton() : game.getUndoButton();
+				point = onEdt(() -> new Point(target.getWidth() / 2, target.getHeight() / 2));
+			}
+			onEdt(() -> {
+				deliveredAt = 0;
+				return null;
+			});
+			posted = System.nanoTime();
+			armed = true;
+			click(target, point);
+			if (!responded.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("No paint after input " + inputs + " (" + Arrays.toString(choice) + ")");
+			}
+			inputs++;
+			waitQuiet();
+		}
+		return inputs;
+	}
+
+	/**
+	 * Picks the next input of a random player
+	 * @return {0} for a new game, {1, board index} for a pit, {2} for Next, {3} for Undo
+	 */
+	private int[] chooseInput() {
+		if (model.checkGameEnd()) return new int[] {0};
+		if (model.allowUndo() && random.nextInt(10) == 0) return new int[] {3};
+		if (model.isTurnEnd()) return new int[] {2};
+		int[] board = model.getBoard();
+		int first = model.getIsPlayerA() ? 8 : 1;
+		int index;
+		do {
+			index = first + random.nextInt(6);
+		} while (board[index] == 0);
+		return new int[] {1, index};
+	}
+
+	/**
+	 * Clicks a move, then Next if that ends the turn, and two more moves while the first
+	 * one is still animated. Checks that every move is animated, in the order of the
+	 * clicks, rather than the queued ones being merged into one change shown at once.
+	 * @return null if every move was animated in order, otherwise what went wrong
+	 * @throws Exception if the GUI does not respond
+	 */
+	public String checkQueuedInput() throws Exception {
+		onEdt(() -> {
+			recording = false;
+			model.init(stones);
+			// A new game keeps the turn of the last one.
+			if (model.isTurnEnd()) model.nextPlayer();
+			return null;
+		});
+		// Plan the inputs on copies of the game, the GUI only gets the clicks.
+		// Next is disabled until a turn has ended, so the two queued moves are made by one
+		// player: the first of them has to give an extra turn.
+		ByteBuffer state = ByteBuffer.allocate(DataModel.STATE_BYTES);
+		int[] pits = null;
+		boolean next = false;
+		DataModel plan = null;
+		for (int setup = 0; pits == null; setup++) {
+			onEdt(() -> {
+				model.writeState(state, 0);
+				return null;
+			});
+			for (int i = 0; i < 36 && pits == null; i++) {
+				plan = new DataModel();
+				plan.readState(state, 0);
+				int first = planMove(plan, i / 6);
+				next = plan.isTurnEnd();
+				if (next) plan.nextPlayer();
+				int second = planMove(plan, i % 6);
+				if (first < 0 || second < 0 || plan.isTurnEnd()) continue;
+				for (int y = 0; y < 6 && pits == null; y++) {
+					int third = planMove(plan, y);
+					if (third >= 0) pits = new int[] {first, second, third};
+				}
+			}
+			if (pits != null) break;
+			if (setup == MAX_SETUP_INPUTS) {
+				return "no position to click two moves in a row within " + MAX_SETUP_INPUTS + " inputs";
+			}
+			// Play on, without measuring, until a position has such an extra turn.
+			onEdt(() -> {
+				int[] choice = chooseInput();
+				if (choice[0] == 0) {
+					model.init(stones);
+				} else if (choice[0] == 1) {
+					model.distributeStones(choice[1] < 7 ? 1 : 0, choice[1] < 7 ? choice[1] - 1 : 13 - choice[1]);
+				} else if (choice[0] == 2) {
+					model.nextPlayer();
+				} else {
+					model.undoATurn();
+				}
+				return null;
+			});
+		}
+		waitQuiet();
+
+		int moves = onEdt(model::getMoveCount);
+		// The origin of every move as it reaches the views, its number and whether it is animated.
+		List<int[]> made = new ArrayList<>();
+		ChangeListener recorder = e -> {
+			if (model.getMoveCount() > moves + made.size()) {
+				made.add(new int[] {model.getLastSowOrigin(), model.getMoveCount() - moves, board.isAnimating() ? 1 : 0});
+			}
+		};
+		onEdt(() -> {
+			model.attach(recorder);
+			return null;
+		});
+		try {
+			int first = pits[0];
+			click(board, onEdt(() -> board.getPitCenter(first)));
+			waitFor(board::isAnimating, "The first move is not animated");
+			if (next) {
+				JButton button = game.getNextButton();
+				click(button, new Point(button.getWidth() / 2, button.getHeight() / 2));
+			}
+			for (int i = 1; i < pits.length; i++) {
+				int pit = pits[i];
+				click(board, onEdt(() -> board.getPitCenter(pit)));
+			}
+			boolean queued = onEdt(() -> board.isAnimating() && model.getMoveCount() == moves + 1);
+			if (!queued) return "the clicks did not arrive while the first move was animated";
+			int count = moves + pits.length;
+			waitFor(() -> model.getMoveCount() == count, "The queued moves were not made");
+			waitQuiet();
+		} finally {
+			onEdt(() -> {
+				model.detach(recorder);
+				return null;
+			});
+		}
+		for (int i = 0; i < pits.length; i++) {
+			if (i >= made.size() || made.get(i)[1] != i + 1 || made.get(i)[0] != pits[i]) {
+				return "move " + (i + 1) + " was merged with another one or made out of order";
+			}
+			if (made.get(i)[2] == 0) {
+				return "move " + (i + 1) + " was shown without animation";
+			}
+		}
+		if (!Arrays.equals(onEdt(model::getBoard), plan.getBoard())) {
+			return "the board differs from the planned moves";
+		}
+		return null;
+	}
+
+	/**
+	 * Makes a move of the player to move
+	 * @param game the game
+	 * @param y the pit within the row of the player
+	 * @return the board index of the pit sown, -1 if the move is not legal
+	 */
+	private static int planMove(DataModel game, int y) {
+		int row = game.getIsPlayerA() ? 0 : 1;
+		if (!game.distributeStones(row, y)) return -1;
+		return row == 1 ? y + 1 : 13 - y;
+	}
+
+	/**
+	 * Clicks a component with the left button: press, release and click
+	 */
+	private void click(Component target, Point point) {
+		post(target, MouseEvent.MOUSE_PRESSED, point, InputEvent.BUTTON1_DOWN_MASK);
+		post(target, MouseEvent.MOUSE_RELEASED, point, 0);
+		post(target, MouseEvent.MOUSE_CLICKED, point, 0);
+	}
+
+	/**
+	 * Polls a condition on the Event Dispatch Thread until it holds
+	 * @throws IllegalStateException with the message if it does not hold in time
+	 */
+	private void waitFor(Callable<Boolean> condition, String message) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while (!onEdt(condition)) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException(message);
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private void post(Component target, int id, Point p, int modifiers) {
+		int clicks = id == MouseEvent.MOUSE_MOVED ? 0 : 1;
+		int button = id == MouseEvent.MOUSE_MOVED ? MouseEvent.NOBUTTON : MouseEvent.BUTTON1;
+		EventQueue queue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+		queue.postEvent(new MouseEvent(target, id, System.currentTimeMillis(), modifiers, p.x, p.y, clicks, false, button));
+	}
+
+	/**
+	 * Waits until no move is animated and nothing has been painted for a while
+	 */
+	private void waitQuiet() throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while (true) {
+			Thread.sleep(10);
+			boolean animating = onEdt(board::isAnimating);
+			if (!animating && System.nanoTime() - lastPaintEnd > QUIET_NANOS) return;
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("The GUI does not settle");
+			}
+		}
+	}
+
+	private static <T> T onEdt(Callable<T> task) throws InterruptedException, InvocationTargetException {
+		Object[] result = new Object[1];
+		SwingUtilities.invokeAndWait(() -> {
+			try {
+				result[0] = task.call();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		@SuppressWarnings("unchecked")
+		T t = (T) result[0];
+		return t;
+	}
+
+	/**
+	 * Runs the test
+	 * @param args the command line
+	 * @throws Exception if the GUI cannot be driven
+	 */
+	public static void main(String[] args) throws Exception {
+		int games = 3;
+		int stones = 3;
+		long seed = 1;
+		int warmup = 20;
+		String formatName = "easter";
+		double maxLatency = 50;
+		double maxFrame = 34;
+		boolean animated = true;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-games": games = Integer.parseInt(args[++i]); break;
+			case "-stones": stones = Integer.parseInt(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-warmup": warmup = Integer.parseInt(args[++i]); break;
+			case "-format": formatName = args[++i]; break;
+			case "-max-latency": maxLatency = Double.parseDouble(args[++i]); break;
+			case "-max-frame": maxFrame = Double.parseDouble(args[++i]); break;
+			case "-no-animation": animated = false; break;
+			default:
+				System.err.println("Usage: LatencyHarness [-games N] [-stones N] [-seed N] [-warmup N] [-format easter|go]"
+						+ " [-max-latency MS] [-max-frame MS] [-no-animation]");
+				System.exit(2);
+			}
+		}
+		BoardFormat format = formatName.equals("go") ? new GOBoardFormat() : new EasterBoardFormat();
+		final int s = stones;
+		final long sd = seed;
+		final boolean a = animated;
+		LatencyHarness harness = onEdt(() -> new LatencyHarness(s, format, a, sd));
+		long start = System.nanoTime();
+		int inputs = harness.play(games, warmup);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games, %d inputs in %.1f s (%d warm-up), %s%n", games, inputs, seconds, warmup,
+				harness.offscreen ? "offscreen, no display" : "on the display");
+		System.out.println("input to paint  " + harness.latency.format());
+		System.out.println("paint           " + harness.paint.format());
+		System.out.println("frame interval  " + harness.frame.format());
+		boolean failed = false;
+		if (animated) {
+			String queued = harness.checkQueuedInput();
+			if (queued == null) {
+				System.out.println("queued input    3 moves animated in order");
+			} else {
+				System.out.println("FAIL: input made during an animation: " + queued);
+				failed = true;
+			}
+		}
+		if (harness.latency.percentile(99) > maxLatency * 1e6) {
+			System.out.printf("FAIL: input to paint p99 is over %.1f ms%n", maxLatency);
+			failed = true;
+		}
+		if (harness.frame.percentile(99) > maxFrame * 1e6) {
+			System.out.printf("FAIL: frame interval p99 is over %.1f ms%n", maxFrame);
+			failed = true;
+		}
+		if (!failed) System.out.println("PASS");
+		System.exit(failed ? 1 : 0);
+	}
+}
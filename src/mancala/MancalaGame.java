@@ -1,16 +1,29 @@
 package mancala;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.Font;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.swing.ButtonGroup;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.KeyStroke;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -27,15 +40,44 @@ public class MancalaGame implements ChangeListener{
 	private JButton nextButton;
 	private JButton undoButton;
 	private JLabel undoTimesLabel;
+	private AnalysisTree analysis;
+	private JFrame frame;
+	private JPanel content;
 	
 	/**
 	 * Constructor for the Mancala GUI
 	 * Initializes the board and dataModel
 	 * DataModel attaches board as part of MVC strategy
 	 * next and undo buttons are added to buttonPanel which is added to GUI Frame
+	 * The game starts once the configuration dialog is confirmed
 	 */
 	public MancalaGame() {
+		createFrame();
+		final ConfigDialog dialog = new ConfigDialog();
+		dialog.attach(e -> start(dialog.getStyles(), dialog.getStyle(), dialog.getMarbleCount()));
+		dialog.pack();
+		dialog.setVisible(true);
+	}
+
+	/**
+	 * Constructor for the Mancala GUI that starts at once with the given configuration
+	 * instead of asking for it, e.g. for automated tests. Without a display no frame is
+	 * created; the content is laid out offscreen and can be painted into an image.
+	 * @param stones the number of stones per pit
+	 * @param format the board format, the only one the Board menu offers
+	 */
+	public MancalaGame(int stones, BoardFormat format) {
+		createFrame();
+		start(Arrays.asList(format), format, stones);
+	}
+
+	/**
+	 * Builds the frame with the board, the buttons and the message line; the content only if headless
+	 */
+	private void createFrame() {
 		dataModel = new DataModel();
+		// Changes reach the views once per frame, however many are made in between.
+		dataModel.setDispatcher(FrameScheduler.getInstance()::runNextFrame);
 		dataModel.attach(this);
 		board = new BoardPanel(dataModel);
 		dataModel.attach(board);
@@ -44,13 +86,13 @@ public class MancalaGame implements ChangeListener{
 		nextButton = new JButton("Next");
 		nextButton.setFont(font);
 		nextButton.addActionListener(e -> {
-			dataModel.nextPlayer();
+			board.queueInput(() -> dataModel.nextPlayer());
 		});
 		undoTimesLabel = new JLabel();
 		undoTimesLabel.setFont(font);
 		undoButton = new JButton("Undo");
 		undoButton.addActionListener(e -> {
-			dataModel.undoATurn();
+			board.queueInput(() -> dataModel.undoATurn());
 		});
 		undoButton.setFont(font);
 		buttonPanel.add(nextButton);
@@ -61,24 +103,155 @@ public class MancalaGame implements ChangeListener{
 		msgLabel.setFont(font);
 		msgPanel.add(msgLabel);
 		
-		final JFrame frame = new JFrame();
+		JPanel southPanel = new JPanel(new BorderLayout());
+		southPanel.add(msgPanel, BorderLayout.CENTER);
+		southPanel.add(buttonPanel, BorderLayout.EAST);
+		
+		// The board takes the center so it grows and shrinks with the frame.
+		content = new JPanel(new BorderLayout());
+		content.add(board, BorderLayout.CENTER);
+		content.add(southPanel, BorderLayout.SOUTH);
+		if (GraphicsEnvironment.isHeadless()) return;
+		frame = new JFrame();
 		frame.setLayout(new BorderLayout());
-		frame.add(board, BorderLayout.NORTH);
-		frame.add(buttonPanel, BorderLayout.EAST);
-		frame.add(msgPanel, BorderLayout.CENTER);
+		frame.add(content, BorderLayout.CENTER);
 
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.pack();
-		
-		final ConfigDialog dialog = new ConfigDialog();
-		dialog.attach(e -> {
-			board.setFormat(dialog.getStyle());
-			dataModel.init(dialog.getMarbleCount());
+	}
+
+	/**
+	 * Starts a game and shows the frame
+	 * @param formats the formats the Board menu offers
+	 * @param format the format to start with
+	 * @param stones the number of stones per pit
+	 */
+	private void start(List<BoardFormat> formats, BoardFormat format, int stones) {
+		board.setFormat(format);
+		if (frame != null) {
+			frame.setJMenuBar(createBoardMenu(formats));
+			frame.pack();
+		}
+		dataModel.init(stones);
+		// Every move made from here on is a node that the Analysis menu can go back to.
+		if (analysis != null) analysis.attach(null);
+		analysis = AnalysisTree.of(dataModel, 1024);
+		analysis.attach(dataModel);
+		if (frame != null) {
 			frame.setVisible(true);
-			update();
+		} else {
+			content.setSize(content.getPreferredSize());
+			layOut(content);
+		}
+		update();
+	}
+
+	/**
+	 * Lays out a container and everything in it; validate does nothing without a window
+	 */
+	private static void layOut(Container container) {
+		container.doLayout();
+		for (Component c : container.getComponents()) {
+			if (c instanceof Container) layOut((Container) c);
+		}
+	}
+	
+	/**
+	 * Creates the menu that switches the board format during a game
+	 * @param formats the available formats
+	 * @return the menu bar with one item per format
+	 */
+	private JMenuBar createBoardMenu(List<BoardFormat> formats) {
+		JMenu menu = new JMenu("Board");
+		menu.setFont(font);
+		ButtonGroup group = new ButtonGroup();
+		for (BoardFormat format : formats) {
+			JRadioButtonMenuItem item = new JRadioButtonMenuItem(format.getName());
+			item.setFont(font);
+			item.setSelected(format == board.getFormat());
+			item.addActionListener(e -> board.setFormat(format));
+			group.add(item);
+			menu.add(item);
+		}
+		JMenuBar menuBar = new JMenuBar();
+		menuBar.add(menu);
+		menuBar.add(createAnalysisMenu());
+		return menuBar;
+	}
+	
+	/**
+	 * Creates the menu that moves through the explored variations of the game
+	 * @return the menu with back, forward and branch switching
+	 */
+	private JMenu createAnalysisMenu() {
+		JMenu menu = new JMenu("Analysis");
+		menu.setFont(font);
+		addAnalysisItem(menu, "Back", KeyEvent.VK_LEFT, () -> {
+			if (analysis.getCurrent() != AnalysisTree.ROOT) analysis.select(analysis.getParent(analysis.getCurrent()));
 		});
-		dialog.pack();
-		dialog.setVisible(true);
+		addAnalysisItem(menu, "Forward", KeyEvent.VK_RIGHT, () -> {
+			int[] children = analysis.getChildren(analysis.getCurrent());
+			if (children.length > 0) analysis.select(children[0]);
+		});
+		addAnalysisItem(menu, "Previous Variation", KeyEvent.VK_UP, () -> analysis.switchBranch(-1));
+		addAnalysisItem(menu, "Next Variation", KeyEvent.VK_DOWN, () -> analysis.switchBranch(1));
+		return menu;
+	}
+	
+	private void addAnalysisItem(JMenu menu, String name, int key, Runnable action) {
+		JMenuItem item = new JMenuItem(name);
+		item.setFont(font);
+		item.setAccelerator(KeyStroke.getKeyStroke(key, InputEvent.ALT_DOWN_MASK));
+		item.addActionListener(e -> board.queueInput(action));
+		menu.add(item);
+	}
+	
+	/**
+	 * Returns the model of the game
+	 * @return the model
+	 */
+	public DataModel getDataModel() {
+		return dataModel;
+	}
+
+	/**
+	 * Returns the view of the board
+	 * @return the board panel
+	 */
+	public BoardPanel getBoard() {
+		return board;
+	}
+
+	/**
+	 * Returns the frame of the game
+	 * @return the frame, null when running without a display
+	 */
+	public JFrame getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Returns the panel with the board, the buttons and the message line
+	 * @return the content of the frame
+	 */
+	public JPanel getContent() {
+		return content;
+	}
+
+	/**
+	 * Returns the button that ends the turn
+	 * @return the Next button
+	 */
+	public JButton getNextButton() {
+		return nextButton;
+	}
+
+	/**
+	 * Returns the button that takes back the last move
+	 * @return the Undo button
+	 */
+	public JButton getUndoButton() {
+		return undoButton;
 	}
 	
 	/**
@@ -104,11 +277,10 @@ public class MancalaGame implements ChangeListener{
 
 	/**
 	 * If the data of the model class has been changed, view class
-	 * will tell the board to update and update the GUI accordingly
+	 * will update the GUI accordingly. The board is attached to the model itself.
 	 */
 	@Override
 	public void stateChanged(ChangeEvent e) {
-		board.stateChanged(e);
 		update();
 	}
 
@@ -0,0 +1,234 @@
+package mancala;
+
+/**
+ * Strategy class for the rules of a mancala game, working directly on a board array.
+ * The board uses the layout of DataModel generalized to any number of pits per side:
+ * board[0] is mancala A, board[1..n] is the row of player B from left to right,
+ * board[n + 1] is mancala B and board[n + 2..2n + 1] is the row of player A from right to left.
+ * Rules are stateless and never allocate, so engines can share one instance across threads.
+ * The common 6-pit Kalah rules of DataModel have their own specialized implementation.
+ * @author TeamNemo
+ *
+ */
+public abstract class MancalaRules {
+	/** The player moves again: the last stone landed in their own mancala. */
+	public static final int EXTRA_TURN = 1;
+	/** Stones were captured. */
+	public static final int CAPTURE = 2;
+	/** A row is empty; the remaining stones were swept into the mancalas. */
+	public static final int GAME_END = 4;
+
+	/**
+	 * How stones are sown and captured
+	 */
+	public enum Variant {
+		/** Stones are sown into the own mancala too; ending there earns another move. */
+		KALAH,
+		/** Stones are only sown into pits; ending on the opponent's side with 2 or 3 stones captures. */
+		OWARE
+	}
+
+	/** The rules DataModel plays: 6 pits per side, Kalah, with empty capture. */
+	public static final MancalaRules KALAH = new Kalah6Rules();
+
+	protected final int pits;
+	protected final int size;
+	protected final Variant variant;
+	protected final boolean capture;
+
+	/**
+	 * Constructor for the MancalaRules class
+	 * @param pits the number of pits per side
+	 * @param variant how stones are sown and captured
+	 * @param capture false to play the variant without captures
+	 */
+	protected MancalaRules(int pits, Variant variant, boolean capture) {
+		if (pits < 1 || pits > 60) {
+			throw new IllegalArgumentException("Unsupported number of pits: " + pits);
+		}
+		this.pits = pits;
+		this.size = 2 * pits + 2;
+		this.variant = variant;
+		this.capture = capture;
+	}
+
+	/**
+	 * Returns the rules for the given parameters, the specialized implementation where one exists
+	 * @param pits the number of pits per side
+	 * @param variant how stones are sown and captured
+	 * @param capture false to play the variant without captures; for Kalah this is the
+	 * empty capture: the last stone landing in an empty pit takes it and the opposite pit
+	 * @return the rules
+	 */
+	public static MancalaRules of(int pits, Variant variant, boolean capture) {
+		if (pits == 6 && variant == Variant.KALAH && capture) {
+			return KALAH;
+		}
+		return new GenericRules(pits, variant, capture);
+	}
+
+	/**
+	 * Sows the stones of a pit and applies captures and the end of the game
+	 * The move must be legal.
+	 * @param board the board, changed in place
+	 * @param playerA true if player A moves
+	 * @param index the board index of the pit to sow from
+	 * @return a combination of EXTRA_TURN, CAPTURE and GAME_END
+	 */
+	public abstract int sow(int[] board, boolean playerA, int index);
+
+	/**
+	 * Returns the number of pits per side
+	 * @return the number of pits per side
+	 */
+	public int getPits() {
+		return pits;
+	}
+
+	/**
+	 * Returns the length of a board array
+	 * @return 2 * pits + 2
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns how stones are sown and captured
+	 * @return the variant
+	 */
+	public Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * Returns whether captures are played
+	 * @return true if the variant captures
+	 */
+	public boolean isCapture() {
+		return capture;
+	}
+
+	/**
+	 * Returns the board index of mancala A
+	 * @return 0
+	 */
+	public int getMancalaA() {
+		return 0;
+	}
+
+	/**
+	 * Returns the board index of mancala B
+	 * @return pits + 1
+	 */
+	public int getMancalaB() {
+		return pits + 1;
+	}
+
+	/**
+	 * Fills every pit with the given number of stones and empties the mancalas
+	 * @param board the board
+	 * @param stones the number of stones per pit
+	 */
+	public void init(int[] board, int stones) {
+		for (int i = 0; i < size; i++) {
+			board[i] = (i == 0 || i == pits + 1) ? 0 : stones;
+		}
+	}
+
+	/**
+	 * Converts a row and pit as used by DataModel.distributeStones into a board index
+	 * @param x the row, 0 for player A and 1 for player B
+	 * @param y the pit within the row, from left to right
+	 * @return the board index
+	 */
+	public int pitIndex(int x, int y) {
+		return x == 1 ? y + 1 : size - 1 - y;
+	}
+
+	/**
+	 * Returns the board index of the first pit of a player's row; the row is the pits that follow
+	 * @param playerA true for player A
+	 * @return the board index of the first pit
+	 */
+	public int firstPit(boolean playerA) {
+		return playerA ? pits + 2 : 1;
+	}
+
+	/**
+	 * Checks if a player may sow from a pit
+	 * @param board the board
+	 * @param playerA true if player A moves
+	 * @param index the board index of the pit
+	 * @return true if the pit is in the player's row and not empty
+	 */
+	public boolean isLegal(int[] board, boolean playerA, int index) {
+		int first = firstPit(playerA);
+		return index >= first && index < first + pits && board[index] > 0;
+	}
+
+	/**
+	 * Returns the pit that receives the next stone while sowing
+	 * @param index the pit that received the previous stone
+	 * @param playerA true if player A sows
+	 * @param origin the pit the stones were taken from
+	 * @return the next board index
+	 */
+	public int next(int index, boolean playerA, int origin) {
+		int storeA = 0;
+		int storeB = pits + 1;
+		do {
+			index = index + 1 == size ? 0 : index + 1;
+		} while ((index == storeA && (!playerA || variant == Variant.OWARE))
+				|| (index == storeB && (playerA || variant == Variant.OWARE))
+				|| (index == origin && variant == Variant.OWARE));
+		return index;
+	}
+
+	/**
+	 * Predicts where the last stone of a move lands without changing the board
+	 * @param board the board
+	 * @param playerA true if player A moves
+	 * @param index the board index of the pit to sow from
+	 * @return the board index that receives the last stone
+	 */
+	public int lastPit(int[] board, boolean playerA, int index) {
+		int i = index;
+		for (int n = board[index]; n > 0; n--) {
+			i = next(i, playerA, index);
+		}
+		return i;
+	}
+
+	/**
+	 * Checks if a row is empty, which ends the game
+	 * @param board the board
+	 * @return true if either row is empty
+	 */
+	public boolean isGameEnd(int[] board) {
+		return isRowEmpty(board, 1) || isRowEmpty(board, pits + 2);
+	}
+
+	private boolean isRowEmpty(int[] board, int first) {
+		for (int i = first; i < first + pits; i++) {
+			if (board[i] > 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the stones left in each row into the mancala of its owner
+	 * @param board the board
+	 */
+	public void sweep(int[] board) {
+		int storeB = pits + 1;
+		for (int i = 1; i <= pits; i++) {
+			board[storeB] += board[i];
+			board[i] = 0;
+		}
+		for (int i = pits + 2; i < size; i++) {
+			board[0] += board[i];
+			board[i] = 0;
+		}
+	}
+}
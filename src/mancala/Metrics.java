@@ -0,0 +1,168 @@
+package mancala;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Instrumentation of the model and board hot paths.
+ * Histograms are only recorded when the JVM is started with -Dmancala.metrics=true
+ * (or -Dmancala.metrics.overlay=true, which also draws them on the board); the flags
+ * are constants, so the checks are compiled away when they are off.
+ * The JFR events are independent of the flags and cost nothing unless a recording enables them.
+ * @author TeamNemo
+ *
+ */
+public class Metrics implements MetricsMXBean {
+	public static final boolean OVERLAY = Boolean.getBoolean("mancala.metrics.overlay");
+	public static final boolean ENABLED = OVERLAY || Boolean.getBoolean("mancala.metrics");
+	public static final Histogram MOVE = new Histogram();
+	public static final Histogram NOTIFY = new Histogram();
+	public static final Histogram PAINT = new Histogram();
+	public static final Histogram PIT_FILL = new Histogram();
+	public static final Histogram CLICK_TO_PAINT = new Histogram();
+
+	static {
+		if (ENABLED) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(),
+						new ObjectName("mancala:type=Metrics"));
+			} catch (JMException e) {
+				System.err.println("Cannot register metrics MBean: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * JFR event for one distributeStones call
+	 */
+	@Name("mancala.Move")
+	@Label("Move")
+	@Category("Mancala")
+	static class MoveEvent extends Event {
+		@Label("Row")
+		int row;
+		@Label("Column")
+		int column;
+		@Label("Accepted")
+		boolean accepted;
+	}
+
+	/**
+	 * JFR event for notifying all listeners of the model
+	 */
+	@Name("mancala.Notify")
+	@Label("Notify Listeners")
+	@Category("Mancala")
+	static class NotifyEvent extends Event {
+		@Label("Listeners")
+		int listeners;
+	}
+
+	/**
+	 * JFR event for one paint of the board
+	 */
+	@Name("mancala.Paint")
+	@Label("Board Paint")
+	@Category("Mancala")
+	static class PaintEvent extends Event {
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+	}
+
+	/**
+	 * JFR event for drawing the marbles of one pit, off by default because it fires 14 times per paint
+	 */
+	@Name("mancala.PitFill")
+	@Label("Pit Fill")
+	@Category("Mancala")
+	@Enabled(false)
+	static class PitFillEvent extends Event {
+		@Label("Marbles")
+		int marbles;
+	}
+
+	/**
+	 * JFR event spanning a click on a pit until the end of the next paint
+	 */
+	@Name("mancala.ClickToPaint")
+	@Label("Click To Paint")
+	@Category("Mancala")
+	static class ClickToPaintEvent extends Event {
+	}
+
+	private Metrics() {
+	}
+
+	private static long micros(long nanos) {
+		return nanos / 1000;
+	}
+
+	@Override
+	public long getMoveCount() {
+		return MOVE.getCount();
+	}
+
+	@Override
+	public long getMoveMeanMicros() {
+		return micros(MOVE.getMean());
+	}
+
+	@Override
+	public long getNotifyMeanMicros() {
+		return micros(NOTIFY.getMean());
+	}
+
+	@Override
+	public long getPaintCount() {
+		return PAINT.getCount();
+	}
+
+	@Override
+	public long getPaintMeanMicros() {
+		return micros(PAINT.getMean());
+	}
+
+	@Override
+	public long getPaintP99Micros() {
+		return micros(PAINT.getPercentile(99));
+	}
+
+	@Override
+	public long getPitFillMeanMicros() {
+		return micros(PIT_FILL.getMean());
+	}
+
+	@Override
+	public long getClickToPaintMeanMicros() {
+		return micros(CLICK_TO_PAINT.getMean());
+	}
+
+	@Override
+	public long getClickToPaintP99Micros() {
+		return micros(CLICK_TO_PAINT.getPercentile(99));
+	}
+
+	@Override
+	public long getClickToPaintMaxMicros() {
+		return micros(CLICK_TO_PAINT.getMax());
+	}
+
+	@Override
+	public void reset() {
+		MOVE.reset();
+		NOTIFY.reset();
+		PAINT.reset();
+		PIT_FILL.reset();
+		CLICK_TO_PAINT.reset();
+	}
+}
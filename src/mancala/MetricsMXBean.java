@@ -0,0 +1,65 @@
+package mancala;
+
+/**
+ * JMX view of the game metrics, registered as mancala:type=Metrics
+ * All durations are in microseconds.
+ * @author TeamNemo
+ *
+ */
+public interface MetricsMXBean {
+
+	/*
+	 * @return the number of distributeStones calls.
+	 */
+	long getMoveCount();
+
+	/*
+	 * @return the mean duration of distributeStones.
+	 */
+	long getMoveMeanMicros();
+
+	/*
+	 * @return the mean duration of notifying all model listeners.
+	 */
+	long getNotifyMeanMicros();
+
+	/*
+	 * @return the number of board paints.
+	 */
+	long getPaintCount();
+
+	/*
+	 * @return the mean duration of a board paint.
+	 */
+	long getPaintMeanMicros();
+
+	/*
+	 * @return the 99th percentile of the board paint duration.
+	 */
+	long getPaintP99Micros();
+
+	/*
+	 * @return the mean duration of drawing the marbles of one pit.
+	 */
+	long getPitFillMeanMicros();
+
+	/*
+	 * @return the mean time from a click on a pit to the end of the next paint.
+	 */
+	long getClickToPaintMeanMicros();
+
+	/*
+	 * @return the 99th percentile of the time from a click to the end of the next paint.
+	 */
+	long getClickToPaintP99Micros();
+
+	/*
+	 * @return the longest time from a click to the end of the next paint.
+	 */
+	long getClickToPaintMaxMicros();
+
+	/**
+	 * Clears all recorded metrics
+	 */
+	void reset();
+}
@@ -0,0 +1,271 @@
+package mancala;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the positions reachable in exactly D moves from the start of a game, the way
+ * chess engines test their move generators. Every sowing is one move: after an extra turn
+ * the same player moves again, and a finished game has no moves. Nodes are counted with
+ * MancalaRules on one board per ply, sequentially or as a fork/join task tree.
+ * The reference mode plays the same tree through DataModel.distributeStones, so a
+ * faster rule implementation can be checked against the game itself.
+ * Usage: Perft [-stones N] [-depth D] [-threads N] [-divide] [-model] [-verify]
+ * @author TeamNemo
+ *
+ */
+public class Perft {
+	/** Known counts from DataModel.init(stones) with player B to move: stones, then depth 1, 2, ... */
+	private static final long[][] REFERENCE = {
+		{ 3, 6, 35, 180, 869, 3881, 16595, 68796, 279519, 1119313, 4432563 },
+		{ 4, 6, 35, 183, 911, 4330, 20255, 93220, 424103, 1909938, 8545132 },
+		{ 5, 6, 35, 184, 932, 4614, 22489, 109894, 538505, 2643605, 12901205 },
+		{ 6, 6, 35, 186, 972, 5136, 26750, 141843, 735800, 3833823, 19596665 },
+	};
+	/** Plies below this are counted sequentially inside a fork/join task. */
+	private static final int SEQUENTIAL_DEPTH = 6;
+	private MancalaRules rules;
+
+	/**
+	 * Constructor for the Perft class
+	 * @param rules the rules moves are played by
+	 */
+	public Perft(MancalaRules rules) {
+		this.rules = rules;
+	}
+
+	/**
+	 * Counts the positions exactly depth moves away
+	 * @param board the position, not changed
+	 * @param playerA true if player A is to move
+	 * @param depth the number of moves
+	 * @return the number of positions
+	 * @throws IllegalArgumentException if depth is negative
+	 */
+	public long count(int[] board, boolean playerA, int depth) {
+		checkDepth(depth);
+		int[][] boards = new int[depth + 1][board.length];
+		System.arraycopy(board, 0, boards[depth], 0, board.length);
+		return count(boards, playerA, depth);
+	}
+
+	/**
+	 * Counts from boards[depth]; the lower boards are scratch for the deeper plies
+	 */
+	private long count(int[][] boards, boolean playerA, int depth) {
+		// The position itself, as countModel counts it, even when the game has ended.
+		if (depth == 0) return 1;
+		int[] board = boards[depth];
+		if (rules.isGameEnd(board)) return 0;
+		int first = rules.firstPit(playerA);
+		int last = first + rules.getPits();
+		if (depth == 1) {
+			// Every legal move leads to one position; no need to play them.
+			int n = 0;
+			for (int i = first; i < last; i++) {
+				if (board[i] > 0) n++;
+			}
+			return n;
+		}
+		int[] next = boards[depth - 1];
+		long nodes = 0;
+		for (int i = first; i < last; i++) {
+			if (board[i] <= 0) continue;
+			System.arraycopy(board, 0, next, 0, board.length);
+			int result = rules.sow(next, playerA, i);
+			nodes += count(boards, (result & MancalaRules.EXTRA_TURN) != 0 ? playerA : !playerA, depth - 1);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Counts a subtree in parallel until few plies are left
+	 */
+	private class CountTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		private int[] board;
+		private boolean playerA;
+		private int depth;
+
+		CountTask(int[] board, boolean playerA, int depth) {
+			this.board = board;
+			this.playerA = playerA;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Long compute() {
+			if (depth <= SEQUENTIAL_DEPTH || rules.isGameEnd(board)) {
+				return count(board, playerA, depth);
+			}
+			List<CountTask> tasks = new ArrayList<>();
+			int first = rules.firstPit(playerA);
+			for (int i = first; i < first + rules.getPits(); i++) {
+				if (board[i] <= 0) continue;
+				int[] next = board.clone();
+				int result = rules.sow(next, playerA, i);
+				tasks.add(new CountTask(next, (result & MancalaRules.EXTRA_TURN) != 0 ? playerA : !playerA, depth - 1));
+			}
+			long nodes = 0;
+			for (CountTask task : invokeAll(tasks)) {
+				nodes += task.join();
+			}
+			return nodes;
+		}
+	}
+
+	/**
+	 * Counts the positions exactly depth moves away on a fork/join pool
+	 * @param pool the pool to run on
+	 * @param board the position, not changed
+	 * @param playerA true if player A is to move
+	 * @param depth the number of moves
+	 * @return the number of positions
+	 * @throws IllegalArgumentException if depth is negative
+	 */
+	public long countParallel(ForkJoinPool pool, int[] board, boolean playerA, int depth) {
+		checkDepth(depth);
+		return pool.invoke(new CountTask(board.clone(), playerA, depth));
+	}
+
+	/**
+	 * Counts the positions exactly depth moves away by playing them on a DataModel
+	 * Each move is undone by restoring the state saved before it. The game must not be journaled.
+	 * @param game the game in the position to count from
+	 * @param depth the number of moves
+	 * @return the number of positions
+	 * @throws IllegalArgumentException if depth is negative
+	 */
+	public static long countModel(DataModel game, int depth) {
+		checkDepth(depth);
+		ByteBuffer saved = ByteBuffer.allocate(DataModel.STATE_BYTES * (depth + 1));
+		return countModel(game, depth, saved);
+	}
+
+	private static void checkDepth(int depth) {
+		if (depth < 0) {
+			throw new IllegalArgumentException("Negative depth: " + depth);
+		}
+	}
+
+	private static long countModel(DataModel game, int depth, ByteBuffer saved) {
+		if (depth == 0) return 1;
+		int offset = DataModel.STATE_BYTES * depth;
+		game.writeState(saved, offset);
+		long nodes = 0;
+		for (int y = 0; y < 6; y++) {
+			if (!game.distributeStones(game.getIsPlayerA() ? 0 : 1, y)) continue;
+			if (game.isTurnEnd()) {
+				game.nextPlayer();
+			}
+			nodes += countModel(game, depth - 1, saved);
+			game.readState(saved, offset);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Runs the tool
+	 * @param args the command line, see the class description
+	 */
+	public static void main(String[] args) {
+		int stones = 4;
+		int depth = 10;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean divide = false;
+		boolean model = false;
+		boolean verify = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-stones": stones = Integer.parseInt(args[++i]); break;
+			case "-depth": depth = Integer.parseInt(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-divide": divide = true; break;
+			case "-model": model = true; break;
+			case "-verify": verify = true; break;
+			default:
+				System.err.println("Usage: Perft [-stones N] [-depth D] [-threads N] [-divide] [-model] [-verify]");
+				System.exit(2);
+			}
+		}
+		Perft perft = new Perft(MancalaRules.KALAH);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		if (verify) {
+			System.exit(verify(perft, pool) ? 0 : 1);
+		}
+		DataModel game = new DataModel();
+		game.init(stones);
+		int[] board = game.getBoard();
+		boolean playerA = game.getIsPlayerA();
+		if (divide) {
+			// The count below each first move, to find where two implementations differ.
+			int first = MancalaRules.KALAH.firstPit(playerA);
+			for (int i = first; i < first + 6; i++) {
+				if (board[i] <= 0) continue;
+				int[] next = board.clone();
+				int result = MancalaRules.KALAH.sow(next, playerA, i);
+				boolean nextPlayer = (result & MancalaRules.EXTRA_TURN) != 0 ? playerA : !playerA;
+				System.out.printf("%c%d %d%n", playerA ? 'A' : 'B', playerA ? 13 - i : i - 1,
+						depth == 1 ? 1 : perft.countParallel(pool, next, nextPlayer, depth - 1));
+			}
+		}
+		for (int d = 1; d <= depth; d++) {
+			long start = System.nanoTime();
+			long single = perft.count(board, playerA, d);
+			long singleNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			long parallel = perft.countParallel(pool, board, playerA, d);
+			long parallelNanos = System.nanoTime() - start;
+			System.out.printf("depth %2d %,15d nodes  single %8.1f Mnodes/s  parallel %8.1f Mnodes/s%s",
+					d, single, single * 1e3 / Math.max(1, singleNanos), parallel * 1e3 / Math.max(1, parallelNanos),
+					single == parallel ? "" : "  PARALLEL MISMATCH " + parallel);
+			if (model) {
+				start = System.nanoTime();
+				long counted = countModel(game, d);
+				System.out.printf("  model %8.2f Mnodes/s%s", counted * 1e3 / Math.max(1, System.nanoTime() - start),
+						counted == single ? "" : "  MODEL MISMATCH " + counted);
+			}
+			long reference = reference(stones, d);
+			if (reference >= 0 && reference != single) {
+				System.out.printf("  REFERENCE MISMATCH %d", reference);
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Returns a known count
+	 * @return the count, -1 if none is known
+	 */
+	private static long reference(int stones, int depth) {
+		for (long[] row : REFERENCE) {
+			if (row[0] == stones) return depth < row.length ? row[depth] : -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks the sequential, parallel and DataModel counts against every reference count
+	 */
+	private static boolean verify(Perft perft, ForkJoinPool pool) {
+		boolean ok = true;
+		for (long[] row : REFERENCE) {
+			DataModel game = new DataModel();
+			game.init((int) row[0]);
+			int[] board = game.getBoard();
+			for (int d = 1; d < row.length; d++) {
+				long single = perft.count(board, game.getIsPlayerA(), d);
+				long parallel = perft.countParallel(pool, board, game.getIsPlayerA(), d);
+				long counted = d <= 7 ? countModel(game, d) : row[d];
+				boolean match = single == row[d] && parallel == row[d] && counted == row[d];
+				ok &= match;
+				System.out.printf("stones %d depth %2d %,12d %s%n", row[0], d, row[d], match ? "ok"
+						: String.format("FAILED single %d parallel %d model %d", single, parallel, counted));
+			}
+		}
+		return ok;
+	}
+}
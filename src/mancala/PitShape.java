@@ -15,7 +15,7 @@ public class PitShape {
 	private int height;
 	private int numberOfMarbles;
 	private Shape shape;
-	final int MARBLE_SIZE = 50;
+	static final int MARBLE_SIZE = 50;
 
 	
 	/**
@@ -34,13 +34,24 @@ public class PitShape {
 	}
 
 	/**
-	 * Fills in the pit and draws the marbles in them
+	 * Draws the static outline of the pit.
+	 * The outline never changes during a game, so BoardPanel renders it once into its cached layer.
 	 * @param g graphics
 	 */
-	public void fill(Graphics2D g) {
+	public void drawOutline(Graphics2D g) {
 		g.setColor(Color.BLACK);
 		g.setStroke(new BasicStroke(10));
 		g.draw(shape);
+	}
+
+	/**
+	 * Fills in the pit with the marbles in them
+	 * @param g graphics
+	 */
+	public void fill(Graphics2D g) {
+		Metrics.PitFillEvent event = new Metrics.PitFillEvent();
+		event.begin();
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
 		g.setStroke(new BasicStroke(3));
 
 		//indicates the number of stones in a pit
@@ -52,29 +63,51 @@ public class PitShape {
 		}
 
 		//determines placement of the stones in overlapping fashion
-		int counter = 1;
 		for (int i = 0; i < numberOfMarbles; i++) {
-			double x;
-			double y;
-			if (counter % 2 == 1) {
-				x = this.x + 30;
-				y = (this.y + 5) + 8 * counter / 1.5;
-			} else {
-				x = this.x + 15;
-				y = (this.y + 5) + 8 * counter / 1.5;
-			}
-
 			//draws the stones
-			Ellipse2D.Double marble = new Ellipse2D.Double(x, y + 25, MARBLE_SIZE, MARBLE_SIZE - 5);
-			g.setColor(Color.CYAN);
-			g.fill(marble);
-			g.setColor(Color.BLACK);
-			g.setStroke (new BasicStroke(2));
-			g.draw(marble);
-			counter++;
+			drawMarble(g, getMarbleX(i), getMarbleY(i));
+		}
+
+		if (Metrics.ENABLED) Metrics.PIT_FILL.record(System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.marbles = numberOfMarbles;
+			event.commit();
 		}
 	}
 
+	/**
+	 * Gets the x-coordinate of a marble, alternating between two columns
+	 * @param i the index of the marble in the pit
+	 * @return the x-coordinate of the marble
+	 */
+	public double getMarbleX(int i) {
+		return (i % 2 == 0) ? x + 30 : x + 15;
+	}
+
+	/**
+	 * Gets the y-coordinate of a marble, each one a little lower than the one before
+	 * @param i the index of the marble in the pit
+	 * @return the y-coordinate of the marble
+	 */
+	public double getMarbleY(int i) {
+		return (y + 5) + 8 * (i + 1) / 1.5 + 25;
+	}
+
+	/**
+	 * Draws a single marble, also used for the marble that is moving between pits
+	 * @param g graphics
+	 * @param x the x-coordinate of the marble
+	 * @param y the y-coordinate of the marble
+	 */
+	public static void drawMarble(Graphics2D g, double x, double y) {
+		Ellipse2D.Double marble = new Ellipse2D.Double(x, y, MARBLE_SIZE, MARBLE_SIZE - 5);
+		g.setColor(Color.CYAN);
+		g.fill(marble);
+		g.setColor(Color.BLACK);
+		g.setStroke (new BasicStroke(2));
+		g.draw(marble);
+	}
+
 	/**
 	 * Gets amount of marbles in the pit
 	 * @return amount of marbles in the pit
@@ -159,7 +192,7 @@ public class PitShape {
 	 */
 	public void draw (Graphics2D g)
 	{
-		g.draw(shape);
+		drawOutline(g);
 		fill(g);
 	}
 }
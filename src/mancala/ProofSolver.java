@@ -0,0 +1,385 @@
+package mancala;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Depth-first proof-number (df-pn) solver that decides whether the player to move wins,
+ * draws or loses, without computing the exact score.
+ * A verdict takes two proofs: "the player to move ends with more than half the stones",
+ * then, if that fails, "at least half". A proof stops as soon as one player's mancala
+ * settles it, since mancalas never lose stones. After an extra turn the same player moves
+ * again, so such a child keeps the node type of its parent.
+ * Proof and disproof numbers live in a table of fixed size with 4-way buckets; a full
+ * bucket replaces the entry with the least work below it, and when the table gets crowded a
+ * garbage-collection pass drops every entry whose subtree was smaller than the median.
+ * A position that repeats on the current path counts as not proven, which only matters
+ * for variants without mancala sowing.
+ * @author TeamNemo
+ *
+ */
+public class ProofSolver {
+	/**
+	 * A verdict for the player to move
+	 */
+	public enum Result { WIN, DRAW, LOSS, UNKNOWN }
+
+	private static final int INF = 100000000;
+	private static final int WAYS = 4;
+	private static final double GC_FILL = 0.75;
+	private static final double EPSILON = 1.25;
+	private MancalaRules rules;
+	private long[] keys;
+	private int[] pns;
+	private int[] dns;
+	private long[] work;
+	private int mask;
+	private int used;
+	private int gcRuns;
+	// The proposition: the final mancala difference of the attacker is greater than margin.
+	private boolean attacker;
+	private int margin;
+	private int total;
+	private long nodes;
+	private long maxNodes;
+	private long[] path;
+	private int pathLength;
+	private int[][] boards;
+
+	/**
+	 * Constructor for the ProofSolver class
+	 * @param rules the rules moves are played by
+	 * @param tableBits the table holds 2^tableBits entries of 24 bytes
+	 */
+	public ProofSolver(MancalaRules rules, int tableBits) {
+		this.rules = rules;
+		keys = new long[1 << tableBits];
+		pns = new int[1 << tableBits];
+		dns = new int[1 << tableBits];
+		work = new long[1 << tableBits];
+		mask = (1 << tableBits) - WAYS;
+		path = new long[64];
+		boards = new int[64][rules.getSize()];
+	}
+
+	/**
+	 * Decides a 6-pit Kalah game for the player to move
+	 * @param game the game
+	 * @param maxNodes the most positions to visit
+	 * @return the verdict, UNKNOWN if the node limit was reached
+	 */
+	public Result solve(DataModel game, long maxNodes) {
+		return solve(game.getBoard(), game.getIsPlayerA(), maxNodes);
+	}
+
+	/**
+	 * Decides a position for the player to move
+	 * @param board the position, not changed
+	 * @param playerA true if player A is to move
+	 * @param maxNodes the most positions to visit
+	 * @return the verdict, UNKNOWN if the node limit was reached
+	 */
+	public Result solve(int[] board, boolean playerA, long maxNodes) {
+		nodes = 0;
+		Boolean win = prove(board, playerA, 0, maxNodes);
+		if (win == null) return Result.UNKNOWN;
+		if (win) return Result.WIN;
+		Boolean draw = prove(board, playerA, -1, maxNodes);
+		if (draw == null) return Result.UNKNOWN;
+		return draw ? Result.DRAW : Result.LOSS;
+	}
+
+	/**
+	 * Proves that the player to move ends with a mancala difference greater than a margin
+	 * @param board the position, not changed
+	 * @param playerA true if player A is to move
+	 * @param margin 0 to prove a win, -1 to prove at least a draw
+	 * @param maxNodes the most positions to visit, counted from the last solve
+	 * @return true if proven, false if disproven, null if the node limit was reached
+	 */
+	public Boolean prove(int[] board, boolean playerA, int margin, long maxNodes) {
+		// The table holds numbers for one proposition only.
+		clear();
+		this.attacker = playerA;
+		this.margin = margin;
+		this.maxNodes = maxNodes;
+		total = 0;
+		for (int v : board) total += v;
+		System.arraycopy(board, 0, boards[0], 0, board.length);
+		pathLength = 0;
+		long key = AlphaBeta.hash(board, playerA);
+		int[] pd = new int[2];
+		int known = evaluate(board);
+		if (known != 0) return known > 0;
+		mid(0, playerA, key, INF - 1, INF - 1, pd);
+		if (pd[0] == 0) return true;
+		if (pd[1] == 0) return false;
+		return null;
+	}
+
+	/**
+	 * Settles a position when the mancalas already decide the proposition
+	 * @return 1 if proven, -1 if disproven, 0 if open
+	 */
+	private int evaluate(int[] board) {
+		int own = attacker ? rules.getMancalaA() : rules.getMancalaB();
+		int opp = attacker ? rules.getMancalaB() : rules.getMancalaA();
+		if (2 * board[own] - total > margin) return 1;
+		if (total - 2 * board[opp] <= margin) return -1;
+		if (rules.isGameEnd(board)) {
+			// Swept, so the mancalas hold everything; one of the above has decided it.
+			return 2 * board[own] - total > margin ? 1 : -1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Expands the node at the given depth until its numbers reach the thresholds
+	 * @param pd receives the proof and disproof number of the node
+	 */
+	private void mid(int depth, boolean playerA, long key, int thpn, int thdn, int[] pd) {
+		long start = nodes++;
+		int[] board = boards[depth];
+		if (depth + 2 >= boards.length) {
+			int[][] more = new int[boards.length * 2][];
+			System.arraycopy(boards, 0, more, 0, boards.length);
+			for (int d = boards.length; d < more.length; d++) more[d] = new int[board.length];
+			boards = more;
+			path = Arrays.copyOf(path, more.length);
+		}
+		boolean or = playerA == attacker;
+		int pits = rules.getPits();
+		int first = rules.firstPit(playerA);
+		// The children: key, player to move, and their numbers as last seen from this node.
+		// The numbers are read from the table once; siblings may be evicted while one
+		// child is searched, and rereading them would undo the progress made so far.
+		long[] childKeys = new long[pits];
+		boolean[] childPlayer = new boolean[pits];
+		int[] childMove = new int[pits];
+		int[] childPn = new int[pits];
+		int[] childDn = new int[pits];
+		int n = 0;
+		int[] next = boards[depth + 1];
+		for (int i = first; i < first + pits; i++) {
+			if (board[i] <= 0) continue;
+			System.arraycopy(board, 0, next, 0, board.length);
+			int result = rules.sow(next, playerA, i);
+			boolean p = (result & MancalaRules.EXTRA_TURN) != 0 ? playerA : !playerA;
+			long childKey = AlphaBeta.hash(next, p);
+			int known = evaluate(next);
+			int slot = known == 0 ? find(childKey) : -1;
+			if (known == 0 && onPath(childKey)) {
+				known = -1;
+			}
+			childMove[n] = i;
+			childPlayer[n] = p;
+			childKeys[n] = childKey;
+			childPn[n] = known > 0 ? 0 : known < 0 ? INF : slot >= 0 ? pns[slot] : 1;
+			childDn[n] = known > 0 ? INF : known < 0 ? 0 : slot >= 0 ? dns[slot] : 1;
+			n++;
+		}
+		path[pathLength++] = key;
+		int pn = 0;
+		int dn = 0;
+		int[] childPd = new int[2];
+		while (true) {
+			// Combine the children: an OR node needs one proven child, an AND node all of them.
+			int best = -1;
+			int bestNum = INF + 1;
+			int second = INF + 1;
+			int sum = 0;
+			for (int c = 0; c < n; c++) {
+				int num = or ? childPn[c] : childDn[c];
+				sum = Math.min(INF, sum + (or ? childDn[c] : childPn[c]));
+				if (num < bestNum) {
+					second = bestNum;
+					bestNum = num;
+					best = c;
+				} else if (num < second) {
+					second = num;
+				}
+			}
+			pn = or ? bestNum : sum;
+			dn = or ? sum : bestNum;
+			if (pn >= thpn || dn >= thdn || nodes > maxNodes) break;
+			// Let the child run a little past the second best, so that two close children
+			// do not take turns being expanded one node at a time.
+			int cth = (int) Math.min(or ? thpn : thdn, (long) (second * EPSILON) + 1);
+			int cother = Math.min(INF - 1, or ? thdn - dn + childDn[best] : thpn - pn + childPn[best]);
+			System.arraycopy(board, 0, next, 0, board.length);
+			rules.sow(next, playerA, childMove[best]);
+			if (or) {
+				mid(depth + 1, childPlayer[best], childKeys[best], cth, cother, childPd);
+			} else {
+				mid(depth + 1, childPlayer[best], childKeys[best], cother, cth, childPd);
+			}
+			childPn[best] = childPd[0];
+			childDn[best] = childPd[1];
+		}
+		pathLength--;
+		store(key, pn, dn, nodes - start);
+		pd[0] = pn;
+		pd[1] = dn;
+	}
+
+	private boolean onPath(long key) {
+		for (int i = 0; i < pathLength; i++) {
+			if (path[i] == key) return true;
+		}
+		return false;
+	}
+
+	private int find(long key) {
+		int bucket = (int) key & mask;
+		for (int w = 0; w < WAYS; w++) {
+			if (keys[bucket + w] == key && work[bucket + w] > 0) return bucket + w;
+		}
+		return -1;
+	}
+
+	/**
+	 * Stores the numbers of a node, replacing the entry with the least work in a full bucket
+	 */
+	private void store(long key, int pn, int dn, long nodeWork) {
+		int bucket = (int) key & mask;
+		int slot = -1;
+		for (int w = 0; w < WAYS; w++) {
+			int s = bucket + w;
+			if (work[s] > 0 && keys[s] == key) {
+				slot = s;
+				nodeWork += work[s];
+				break;
+			}
+			if (slot < 0 || (work[slot] > 0 && work[s] < work[slot])) slot = s;
+		}
+		if (work[slot] == 0) {
+			used++;
+		}
+		keys[slot] = key;
+		pns[slot] = pn;
+		dns[slot] = dn;
+		work[slot] = Math.max(1, nodeWork);
+		if (used > GC_FILL * keys.length) {
+			collect();
+		}
+	}
+
+	/**
+	 * Drops every entry whose subtree is not above the median work, estimated from a sample
+	 */
+	private void collect() {
+		gcRuns++;
+		SplittableRandom random = new SplittableRandom(gcRuns);
+		long[] sample = new long[1024];
+		int n = 0;
+		for (int k = 0; k < 64 * sample.length && n < sample.length; k++) {
+			long w = work[random.nextInt(work.length)];
+			if (w > 0) sample[n++] = w;
+		}
+		Arrays.sort(sample, 0, n);
+		long threshold = n == 0 ? 1 : sample[n / 2];
+		for (int s = 0; s < work.length; s++) {
+			if (work[s] > 0 && work[s] <= threshold) {
+				work[s] = 0;
+				used--;
+			}
+		}
+	}
+
+	private void clear() {
+		Arrays.fill(work, 0);
+		used = 0;
+	}
+
+	/**
+	 * Returns the number of positions visited by the last solve
+	 * @return the number of positions
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns how often the table was garbage collected since the solver was created
+	 * @return the number of collections
+	 */
+	public int getGcRuns() {
+		return gcRuns;
+	}
+
+	/**
+	 * Solves the starting position, and with -check compares random positions with AlphaBeta
+	 * Usage: ProofSolver [-stones N] [-nodes N] [-table BITS] [-check N]
+	 * @param args the command line
+	 */
+	public static void main(String[] args) {
+		int stones = 3;
+		long maxNodes = 100_000_000L;
+		int tableBits = 20;
+		int check = 0;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-stones": stones = Integer.parseInt(args[++i]); break;
+			case "-nodes": maxNodes = Long.parseLong(args[++i]); break;
+			case "-table": tableBits = Integer.parseInt(args[++i]); break;
+			case "-check": check = Integer.parseInt(args[++i]); break;
+			default:
+				System.err.println("Usage: ProofSolver [-stones N] [-nodes N] [-table BITS] [-check N]");
+				System.exit(2);
+			}
+		}
+		ProofSolver solver = new ProofSolver(MancalaRules.KALAH, tableBits);
+		DataModel game = new DataModel();
+		game.init(stones);
+		long start = System.nanoTime();
+		Result result = solver.solve(game, maxNodes);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d stones, player %s to move: %s, %,d nodes in %.2f s, %d table collections%n", stones,
+				game.getIsPlayerA() ? "A" : "B", result, solver.getNodes(), seconds, solver.getGcRuns());
+		if (check > 0) {
+			System.exit(check(solver, check, maxNodes) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Compares the verdicts on random positions with the sign of a full AlphaBeta search
+	 */
+	private static boolean check(ProofSolver solver, int count, long maxNodes) {
+		MancalaRules rules = MancalaRules.KALAH;
+		AlphaBeta search = new AlphaBeta(rules, 20);
+		SplittableRandom random = new SplittableRandom(42);
+		int[] board = new int[14];
+		int checked = 0;
+		long pnNodes = 0;
+		long abNodes = 0;
+		while (checked < count) {
+			rules.init(board, 2 + random.nextInt(2));
+			boolean playerA = random.nextBoolean();
+			int plies = 4 + random.nextInt(30);
+			for (int p = 0; p < plies && !rules.isGameEnd(board); p++) {
+				int first = rules.firstPit(playerA);
+				int i;
+				do {
+					i = first + random.nextInt(6);
+				} while (board[i] <= 0);
+				if ((rules.sow(board, playerA, i) & MancalaRules.EXTRA_TURN) == 0) playerA = !playerA;
+			}
+			if (rules.isGameEnd(board)) continue;
+			Result verdict = solver.solve(board, playerA, maxNodes);
+			pnNodes += solver.getNodes();
+			long before = search.getNodes();
+			int value = search.search(board, playerA, 200);
+			abNodes += search.getNodes() - before;
+			Result expected = value > 0 ? Result.WIN : value == 0 ? Result.DRAW : Result.LOSS;
+			if (verdict != expected) {
+				System.out.println("MISMATCH " + Arrays.toString(board) + (playerA ? " A" : " B")
+						+ ": " + verdict + ", alpha-beta value " + value);
+				return false;
+			}
+			checked++;
+		}
+		System.out.printf("%d random positions agree with alpha-beta; %,d proof-number nodes, %,d alpha-beta nodes%n",
+				count, pnNodes, abNodes);
+		return true;
+	}
+}
@@ -0,0 +1,226 @@
+package mancala;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.swing.ImageIcon;
+
+/**
+ * Command line tool that replays recorded games through BoardPanel without a display
+ * and writes one PNG per accepted input, or one animated GIF per game.
+ * Games are rendered in parallel, one game per worker at a time.
+ * Usage: ReplayExporter [-format easter|go|&lt;theme file&gt;] [-size WIDTHxHEIGHT]
+ * [-threads N] [-gif] [-delay MILLIS] outDir archive...
+ * @author TeamNemo
+ *
+ */
+public class ReplayExporter {
+	private BoardFormat format;
+	private int width;
+	private int height;
+	private boolean gif;
+	private int delayMillis;
+	private Path outDir;
+
+	/**
+	 * Constructor for the ReplayExporter class
+	 * @param format the format to draw the boards in
+	 * @param width the width of the images
+	 * @param height the height of the images
+	 * @param gif true to write an animated GIF per game instead of PNGs
+	 * @param delayMillis the time each frame of a GIF is shown
+	 * @param outDir the directory to write the images to
+	 */
+	public ReplayExporter(BoardFormat format, int width, int height, boolean gif, int delayMillis, Path outDir) {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.gif = gif;
+		this.delayMillis = delayMillis;
+		this.outDir = outDir;
+		// Toolkit images load asynchronously; wait once so that every render has the background.
+		new ImageIcon(format.backgroundImg());
+	}
+
+	/**
+	 * Renders one game
+	 * @param record the game
+	 * @param name the prefix of the files written for the game
+	 * @return the number of frames written
+	 * @throws IOException if an image cannot be written
+	 */
+	public int export(GameRecord record, String name) throws IOException {
+		DataModel game = new DataModel();
+		BoardPanel board = new BoardPanel(game);
+		board.setAnimated(false);
+		board.setFormat(format);
+		board.setSize(width, height);
+		game.attach(board);
+		game.init(record.getStones());
+
+		List<BufferedImage> frames = new ArrayList<>();
+		BufferedImage image = render(board, null);
+		int written = write(image, name, 0, frames);
+		for (int i = 0; i < record.size(); i++) {
+			if (!record.apply(game, i)) continue;
+			image = render(board, gif ? null : image);
+			written += write(image, name, written, frames);
+		}
+		if (gif) {
+			writeGif(frames, outDir.resolve(name + ".gif"));
+			return frames.size();
+		}
+		return written;
+	}
+
+	private BufferedImage render(BoardPanel board, BufferedImage reuse) {
+		BufferedImage image = reuse != null ? reuse : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		board.paint(g);
+		g.dispose();
+		return image;
+	}
+
+	private int write(BufferedImage image, String name, int n, List<BufferedImage> frames) throws IOException {
+		if (gif) {
+			frames.add(image);
+		} else {
+			ImageIO.write(image, "png", outDir.resolve(String.format("%s-%03d.png", name, n)).toFile());
+		}
+		return 1;
+	}
+
+	/**
+	 * Writes the frames as a looping GIF
+	 */
+	private void writeGif(List<BufferedImage> frames, Path file) throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+			writer.setOutput(out);
+			writer.prepareWriteSequence(null);
+			for (BufferedImage frame : frames) {
+				ImageTypeSpecifier type = ImageTypeSpecifier.createFromRenderedImage(frame);
+				IIOMetadata metadata = writer.getDefaultImageMetadata(type, null);
+				String formatName = metadata.getNativeMetadataFormatName();
+				IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+				IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+				control.setAttribute("disposalMethod", "none");
+				control.setAttribute("userInputFlag", "FALSE");
+				control.setAttribute("transparentColorFlag", "FALSE");
+				control.setAttribute("delayTime", Integer.toString(delayMillis / 10));
+				control.setAttribute("transparentColorIndex", "0");
+				root.appendChild(control);
+				IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+				IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+				loop.setAttribute("applicationID", "NETSCAPE");
+				loop.setAttribute("authenticationCode", "2.0");
+				loop.setUserObject(new byte[] { 1, 0, 0 });
+				extensions.appendChild(loop);
+				root.appendChild(extensions);
+				metadata.setFromTree(formatName, root);
+				writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+			}
+			writer.endWriteSequence();
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Exports all games of the given archives in parallel
+	 * @param args the command line, see the class description
+	 * @throws Exception if the arguments are invalid
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		String formatName = "easter";
+		int width = 1280;
+		int height = 500;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean gif = false;
+		int delay = 500;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			if (args[i].equals("-format")) {
+				formatName = args[++i];
+			} else if (args[i].equals("-size")) {
+				String[] size = args[++i].split("x");
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[1]);
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-gif")) {
+				gif = true;
+			} else if (args[i].equals("-delay")) {
+				delay = Integer.parseInt(args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (args.length - i < 2) {
+			System.err.println("Usage: ReplayExporter [-format easter|go|<theme file>] [-size WIDTHxHEIGHT]"
+					+ " [-threads N] [-gif] [-delay MILLIS] outDir archive...");
+			System.exit(2);
+		}
+		BoardFormat format;
+		if (formatName.equals("easter")) {
+			format = new EasterBoardFormat();
+		} else if (formatName.equals("go")) {
+			format = new GOBoardFormat();
+		} else {
+			format = ThemeBoardFormat.load(Paths.get(formatName));
+		}
+		Path outDir = Paths.get(args[i++]);
+		Files.createDirectories(outDir);
+		ReplayExporter exporter = new ReplayExporter(format, width, height, gif, delay, outDir);
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Integer>> results = new ArrayList<>();
+		AtomicInteger failed = new AtomicInteger();
+		for (; i < args.length; i++) {
+			Path archive = Paths.get(args[i]);
+			String base = archive.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+			List<GameRecord> records = GameRecord.readAll(archive);
+			for (int n = 0; n < records.size(); n++) {
+				GameRecord record = records.get(n);
+				String name = records.size() == 1 ? base : String.format("%s-%05d", base, n);
+				results.add(pool.submit(() -> {
+					try {
+						return exporter.export(record, name);
+					} catch (IOException | RuntimeException e) {
+						failed.incrementAndGet();
+						System.err.println(name + ": " + e);
+						return 0;
+					}
+				}));
+			}
+		}
+		long frames = 0;
+		for (Future<Integer> f : results) {
+			frames += f.get();
+		}
+		pool.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d games, %d frames in %.1f s (%.0f frames/s), %d failed%n",
+				results.size(), frames, seconds, frames / seconds, failed.get());
+		System.exit(failed.get() == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,136 @@
+package mancala;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Off-heap store for games that are waiting for a player.
+ * A parked game takes one fixed 64 byte slot in a direct buffer instead of a DataModel
+ * with its arrays and listeners, so millions of parked games cost a few hundred MB
+ * outside the Java heap and add nothing to garbage collection.
+ * Buffers are allocated in segments as the store grows, and freed slots are reused.
+ * @author TeamNemo
+ *
+ */
+public class SessionStore {
+	private static final int SLOT_BYTES = 64;
+	private static final int USED = SLOT_BYTES - 1; // offset of the in-use marker within a slot
+	private static final int SEGMENT_SLOTS = 1 << 20; // 64 MB per segment
+	private List<ByteBuffer> segments;
+	private int[] freeSlots;
+	private int freeCount;
+	private int slotCount; // slots handed out so far, used or freed
+	private int size;
+
+	/**
+	 * Constructor for the SessionStore class. No memory is allocated until the first game is parked.
+	 */
+	public SessionStore() {
+		segments = new ArrayList<>();
+		freeSlots = new int[16];
+	}
+
+	/**
+	 * Stores the state of a game off-heap. The model can be dropped afterwards.
+	 * @param game the game to park
+	 * @return the handle to resume the game with
+	 */
+	public synchronized int park(DataModel game) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if (slotCount == Integer.MAX_VALUE) {
+				throw new IllegalStateException("Session store is full");
+			}
+			slot = slotCount++;
+			if (slot / SEGMENT_SLOTS == segments.size()) {
+				segments.add(ByteBuffer.allocateDirect(SEGMENT_SLOTS * SLOT_BYTES));
+			}
+		}
+		ByteBuffer segment = segment(slot);
+		int offset = offset(slot);
+		game.writeState(segment, offset);
+		segment.put(offset + USED, (byte) 1);
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Overwrites the state of a parked game
+	 * @param handle the handle returned by park
+	 * @param game the new state of the game
+	 */
+	public synchronized void update(int handle, DataModel game) {
+		checkUsed(handle);
+		game.writeState(segment(handle), offset(handle));
+	}
+
+	/**
+	 * Loads a parked game into a model without removing it from the store
+	 * @param handle the handle returned by park
+	 * @param game the model to load the state into, its listeners are notified
+	 */
+	public synchronized void load(int handle, DataModel game) {
+		checkUsed(handle);
+		game.readState(segment(handle), offset(handle));
+	}
+
+	/**
+	 * Rehydrates a parked game and frees its slot
+	 * @param handle the handle returned by park
+	 * @return a new model with the state of the game
+	 */
+	public synchronized DataModel resume(int handle) {
+		DataModel game = new DataModel();
+		load(handle, game);
+		remove(handle);
+		return game;
+	}
+
+	/**
+	 * Frees the slot of a parked game
+	 * @param handle the handle returned by park
+	 */
+	public synchronized void remove(int handle) {
+		checkUsed(handle);
+		segment(handle).put(offset(handle) + USED, (byte) 0);
+		if (freeCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		}
+		freeSlots[freeCount++] = handle;
+		size--;
+	}
+
+	/**
+	 * Returns the number of parked games
+	 * @return the number of parked games
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the off-heap memory reserved by the store
+	 * @return the size of all segments in bytes
+	 */
+	public synchronized long getReservedBytes() {
+		return (long) segments.size() * SEGMENT_SLOTS * SLOT_BYTES;
+	}
+
+	private ByteBuffer segment(int slot) {
+		return segments.get(slot / SEGMENT_SLOTS);
+	}
+
+	private static int offset(int slot) {
+		return (slot % SEGMENT_SLOTS) * SLOT_BYTES;
+	}
+
+	private void checkUsed(int handle) {
+		if (handle < 0 || handle >= slotCount || segment(handle).get(offset(handle) + USED) == 0) {
+			throw new IllegalArgumentException("No parked game for handle " + handle);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package mancala;
+
+import java.awt.Graphics2D;
+
+import javax.swing.JComponent;
+
+/**
+ * Animates one move by dropping the stones of a pit one at a time into the following pits.
+ * Progress is computed from elapsed time, so frames that arrive late skip ahead
+ * instead of slowing the animation down.
+ * @author TeamNemo
+ *
+ */
+public class SowingAnimation implements FrameScheduler.FrameTask {
+	private static final long STEP_NANOS = 150000000L;
+	private PitShape[] pits;
+	private int origin;
+	private int[] path;
+	private JComponent view;
+	private Runnable onFinish;
+	private long start;
+	private int landed;
+
+	/**
+	 * Constructor for the SowingAnimation class
+	 * @param pits the pits of the board indexed like the DataModel board
+	 * @param origin the board index of the pit the stones are taken from
+	 * @param path the board indexes that receive a stone, in order
+	 * @param view the component to repaint on every frame
+	 * @param onFinish called once the last stone has landed
+	 */
+	public SowingAnimation(PitShape[] pits, int origin, int[] path, JComponent view, Runnable onFinish) {
+		this.pits = pits;
+		this.origin = origin;
+		this.path = path;
+		this.view = view;
+		this.onFinish = onFinish;
+	}
+
+	/**
+	 * Empties the origin pit and starts the animation on the shared frame scheduler
+	 */
+	public void start() {
+		pits[origin].setMarbles(0);
+		start = System.nanoTime();
+		FrameScheduler.getInstance().schedule(this);
+		view.repaint();
+	}
+
+	/**
+	 * Stops the animation without calling onFinish
+	 */
+	public void cancel() {
+		FrameScheduler.getInstance().cancel(this);
+	}
+
+	/**
+	 * Lands every stone whose step has elapsed, several at once if frames were skipped
+	 * @param now the frame time
+	 * @return true while stones are still moving
+	 */
+	@Override
+	public boolean frame(long now) {
+		long target = Math.min(path.length, (now - start) / STEP_NANOS);
+		while (landed < target) {
+			PitShape p = pits[path[landed]];
+			p.setMarbles(p.getMarbles() + 1);
+			landed++;
+		}
+		view.repaint();
+		if (landed < path.length) return true;
+		onFinish.run();
+		return false;
+	}
+
+	/**
+	 * Draws the stone that is currently moving, interpolated between its two pits
+	 * @param g graphics in board format coordinates
+	 * @param now the current time from System.nanoTime()
+	 */
+	public void paint(Graphics2D g, long now) {
+		if (landed >= path.length) return;
+		double t = (double) (now - start - landed * STEP_NANOS) / STEP_NANOS;
+		t = Math.max(0, Math.min(1, t));
+		// Ease in and out so the stone visibly settles into each pit.
+		t = t * t * (3 - 2 * t);
+		PitShape from = pits[landed == 0 ? origin : path[landed - 1]];
+		PitShape to = pits[path[landed]];
+		double x = centerX(from) + (centerX(to) - centerX(from)) * t;
+		double y = centerY(from) + (centerY(to) - centerY(from)) * t;
+		PitShape.drawMarble(g, x - PitShape.MARBLE_SIZE / 2.0, y - PitShape.MARBLE_SIZE / 2.0);
+	}
+
+	private static double centerX(PitShape p) {
+		return p.getX() + p.getWidth() / 2.0;
+	}
+
+	private static double centerY(PitShape p) {
+		return p.getY() + p.getHeight() / 2.0;
+	}
+}
@@ -0,0 +1,408 @@
+package mancala;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.event.ChangeListener;
+
+/**
+ * Publishes the live state of games to spectators over loopback sockets.
+ * A spectator connects and sends a line "watch &lt;gameId&gt;" or "watch all", and then
+ * receives one line per change:
+ * "game &lt;id&gt; &lt;move&gt; &lt;A|B&gt; &lt;turnEnd&gt; &lt;mancalaA&gt; &lt;mancalaB&gt; &lt;rowA x6&gt; &lt;rowB x6&gt;".
+ * The game's own thread only formats the line once and hands it to a selector thread,
+ * which writes to all spectators without blocking. The queue to the selector thread is
+ * bounded; when it is full, the changes of a game are merged and its latest state is sent
+ * once the selector thread catches up. Every spectator has a bounded queue as well;
+ * when it fills up, older lines of the same game are conflated into the latest one, and a
+ * spectator that is still too far behind is disconnected. A new subscription first gets
+ * the current line of every game it watches.
+ * @author TeamNemo
+ *
+ */
+public class SpectatorServer implements Closeable {
+	// Unsent lines a spectator may have before its queue is conflated or it is dropped.
+	private static final int MAX_PENDING = 1024;
+	// Lines queued for the selector thread before further changes are merged per game.
+	private static final int MAX_QUEUED = 4096;
+	private static final int MAX_COMMAND = 64;
+	private Selector selector;
+	private ServerSocketChannel server;
+	private ConcurrentLinkedQueue<Update> updates;
+	private AtomicInteger queued; // the size of updates
+	private Map<Long, DataModel> merged; // games that changed while updates was full
+	private Map<Long, Watched> games; // every game registered by watch
+	private AtomicBoolean wakeupPending;
+	private volatile int spectators;
+	private volatile boolean closed;
+	private Thread thread;
+
+	/**
+	 * One formatted change of a game, shared read-only by all spectators
+	 */
+	private static class Update {
+		long gameId;
+		ByteBuffer line;
+	}
+
+	/**
+	 * A game registered by watch and the listener that publishes it
+	 */
+	private static class Watched {
+		DataModel game;
+		ChangeListener listener;
+	}
+
+	/**
+	 * Connection state of one spectator
+	 */
+	private static class Spectator {
+		ByteBuffer command = ByteBuffer.allocate(MAX_COMMAND);
+		boolean all;
+		long gameId = -1;
+		boolean subscribed;
+		ByteBuffer current;
+		ArrayDeque<Update> pending = new ArrayDeque<>();
+	}
+
+	/**
+	 * Constructor for the SpectatorServer class. Starts listening on the loopback interface.
+	 * @param port the port to listen on, 0 for any free port
+	 * @throws IOException if the port cannot be opened
+	 */
+	public SpectatorServer(int port) throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		updates = new ConcurrentLinkedQueue<>();
+		queued = new AtomicInteger();
+		merged = new ConcurrentHashMap<>();
+		games = new ConcurrentHashMap<>();
+		wakeupPending = new AtomicBoolean();
+		thread = new Thread(this::run, "spectator-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Returns the port spectators connect to
+	 * @return the local port
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Publishes every change of a game from now on, until unwatch or close
+	 * @param gameId the id spectators watch the game by; a game watched by the same id before is replaced
+	 * @param game the game to publish
+	 * @throws IllegalStateException if the server has stopped
+	 */
+	public void watch(long gameId, DataModel game) {
+		if (closed) {
+			throw new IllegalStateException("Spectator server is closed");
+		}
+		Watched w = new Watched();
+		w.game = game;
+		w.listener = e -> publish(gameId, game);
+		game.attach(w.listener);
+		Watched old = games.put(gameId, w);
+		if (old != null) old.game.detach(old.listener);
+		// The server may have stopped and unwatched everything meanwhile.
+		if (closed) unwatch(gameId);
+	}
+
+	/**
+	 * Stops publishing a game, e.g. when it is finished, so that its DataModel no longer
+	 * refers to this server. Called for every game when the server stops.
+	 * @param gameId the id the game was watched by; nothing happens if it is not watched
+	 */
+	public void unwatch(long gameId) {
+		Watched w = games.remove(gameId);
+		if (w != null) w.game.detach(w.listener);
+	}
+
+	/**
+	 * Formats the current state of a game and queues it for the selector thread.
+	 * Nothing is formatted while no spectator is connected or after the server has stopped.
+	 * While the queue is full, only the game is remembered, and the selector thread formats
+	 * its latest state when it catches up.
+	 * @param gameId the id of the game
+	 * @param game the game that changed
+	 */
+	public void publish(long gameId, DataModel game) {
+		if (spectators == 0 || closed) return;
+		if (queued.get() >= MAX_QUEUED) {
+			merged.put(gameId, game);
+		} else {
+			queued.incrementAndGet();
+			updates.add(format(gameId, game));
+		}
+		// One wakeup covers every update queued until the selector thread runs.
+		if (wakeupPending.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Formats the current state of a game as one line
+	 */
+	private static Update format(long gameId, DataModel game) {
+		StringBuilder sb = new StringBuilder(96);
+		sb.append("game ").append(gameId).append(' ').append(game.getMoveCount())
+			.append(game.getIsPlayerA() ? " A " : " B ").append(game.isTurnEnd())
+			.append(' ').append(game.getMancalaA()).append(' ').append(game.getMancalaB());
+		for (int n : game.getRowA()) sb.append(' ').append(n);
+		for (int n : game.getRowB()) sb.append(' ').append(n);
+		sb.append('\n');
+		Update u = new Update();
+		u.gameId = gameId;
+		u.line = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+		return u;
+	}
+
+	/**
+	 * Returns the number of connected spectators
+	 * @return the number of connected spectators
+	 */
+	public int getSpectatorCount() {
+		return spectators;
+	}
+
+	/**
+	 * Disconnects all spectators and stops the server
+	 * @throws IOException if the server socket cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		selector.close();
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				wakeupPending.set(false);
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						if (key.isReadable()) read(key);
+						if (key.isValid() && key.isWritable()) write(key);
+					}
+				}
+				dispatch();
+			}
+		} catch (IOException e) {
+			System.err.println("Spectator server stopped: " + e.getMessage());
+		} finally {
+			// Whether closed or failed: publish stops queueing and every connection ends.
+			closed = true;
+			if (selector.isOpen()) {
+				for (SelectionKey key : selector.keys()) {
+					try {
+						key.channel().close();
+					} catch (IOException e) {
+						// Already gone.
+					}
+				}
+			}
+			try {
+				server.close();
+			} catch (IOException e) {
+				// Already gone.
+			}
+			spectators = 0;
+			updates.clear();
+			queued.set(0);
+			merged.clear();
+			for (Long gameId : games.keySet()) {
+				unwatch(gameId);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) return;
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, new Spectator());
+		spectators++;
+	}
+
+	/**
+	 * Reads the watch command of a spectator
+	 */
+	private void read(SelectionKey key) {
+		Spectator s = (Spectator) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		try {
+			if (channel.read(s.command) < 0) {
+				drop(key);
+				return;
+			}
+		} catch (IOException e) {
+			drop(key);
+			return;
+		}
+		ByteBuffer buf = s.command;
+		for (int i = 0; i < buf.position(); i++) {
+			if (buf.get(i) != '\n') continue;
+			String line = new String(buf.array(), 0, i, StandardCharsets.US_ASCII).trim();
+			buf.flip();
+			buf.position(i + 1);
+			buf.compact();
+			i = -1;
+			if (line.equals("watch all")) {
+				s.all = true;
+				s.subscribed = true;
+				sendCurrent(key, s);
+			} else if (line.startsWith("watch ")) {
+				try {
+					s.gameId = Long.parseLong(line.substring(6).trim());
+					s.subscribed = true;
+				} catch (NumberFormatException e) {
+					drop(key);
+					return;
+				}
+				sendCurrent(key, s);
+			}
+		}
+		if (!buf.hasRemaining()) {
+			// A command longer than any valid one.
+			drop(key);
+		}
+	}
+
+	/**
+	 * Queues the current line of every game a new subscription watches, so that it does not
+	 * wait for the next change. The line is formatted on this thread while the game may be
+	 * changing; the change is published right after it, so a torn line is soon replaced.
+	 */
+	private void sendCurrent(SelectionKey key, Spectator s) {
+		for (Map.Entry<Long, Watched> e : games.entrySet()) {
+			if (s.all || s.gameId == e.getKey()) {
+				s.pending.add(format(e.getKey(), e.getValue().game));
+			}
+		}
+		if (!s.pending.isEmpty()) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Hands the queued updates to every spectator watching the game, then the latest
+	 * state of every game whose changes were merged, which is newer than any queued line
+	 */
+	private void dispatch() {
+		Update u;
+		while ((u = updates.poll()) != null) {
+			queued.decrementAndGet();
+			dispatch(u);
+		}
+		for (Iterator<Map.Entry<Long, DataModel>> it = merged.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Long, DataModel> e = it.next();
+			it.remove();
+			dispatch(format(e.getKey(), e.getValue()));
+		}
+	}
+
+	/**
+	 * Hands one update to every spectator watching its game
+	 */
+	private void dispatch(Update u) {
+		for (SelectionKey key : selector.keys()) {
+			if (!key.isValid() || !(key.attachment() instanceof Spectator)) continue;
+			Spectator s = (Spectator) key.attachment();
+			if (!s.subscribed || (!s.all && s.gameId != u.gameId)) continue;
+			if (s.pending.size() >= MAX_PENDING) {
+				conflate(s.pending);
+				if (s.pending.size() >= MAX_PENDING) {
+					drop(key);
+					continue;
+				}
+			}
+			s.pending.add(u);
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+	}
+
+
+	/**
+	 * Writes as much as the socket takes without blocking
+	 */
+	private void write(SelectionKey key) {
+		Spectator s = (Spectator) key.attachment();
+		SocketChannel channel = (SocketChannel) key.channel();
+		try {
+			while (true) {
+				if (s.current == null || !s.current.hasRemaining()) {
+					Update u = s.pending.poll();
+					if (u == null) {
+						s.current = null;
+						key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+						return;
+					}
+					s.current = u.line.duplicate();
+				}
+				channel.write(s.current);
+				if (s.current.hasRemaining()) return;
+			}
+		} catch (IOException e) {
+			drop(key);
+		}
+	}
+
+	/**
+	 * Keeps only the latest line of each game, in the order of those latest lines
+	 * @param pending the queue of a spectator that is falling behind
+	 */
+	private static void conflate(ArrayDeque<Update> pending) {
+		LinkedHashMap<Long, Update> latest = new LinkedHashMap<>();
+		for (Update u : pending) {
+			latest.remove(u.gameId);
+			latest.put(u.gameId, u);
+		}
+		pending.clear();
+		pending.addAll(latest.values());
+	}
+
+	private void drop(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// Already gone.
+		}
+		spectators--;
+	}
+}
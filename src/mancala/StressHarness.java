@@ -0,0 +1,402 @@
+package mancala;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line tool that pushes random sequences of moves, undos and next player inputs
+ * through DataModel on every core and checks it after every step.
+ * Each step checks the cheap invariants on the board: the stones add up to 12 times the
+ * number of stones per pit, no pit is negative, an accepted undo restores the board from
+ * before the last move, and a finished game has swept every pit into the mancalas.
+ * In batches of steps the complete state is also compared with Oracle, a plain copy of the
+ * original rules kept here on purpose; a mismatch replays the batch step by step to find
+ * the first wrong step. With -every the oracle is compared after every step instead.
+ * Usage: StressHarness [-steps N] [-threads N] [-batch N] [-seed N] [-every]
+ * @author TeamNemo
+ *
+ */
+public class StressHarness {
+	private static final int MOVE = 0;
+	private static final int NEXT = 1;
+	private static final int UNDO = 2;
+	private static final int INIT = 3;
+
+	/**
+	 * The game as it was written before the rules moved into MancalaRules
+	 */
+	static class Oracle {
+		int[] data = new int[14];
+		int[] last = new int[14];
+		boolean isPlayerA;
+		boolean allowUndo;
+		boolean turnEnd;
+		int undoTimes = 3;
+
+		void init(int numStones) {
+			for (int i = 0; i < 14; i++) {
+				data[i] = (i == 0 || i == 7) ? 0 : numStones;
+			}
+		}
+
+		boolean distributeStones(int x, int y) {
+			if (x < 0 || x >= 2 || y < 0 || y >= 6) return false;
+			if (turnEnd) return false;
+			if (isPlayerA && x == 1) return false;
+			if (!isPlayerA && x == 0) return false;
+			int i = (x == 1 ? y + 1 : 13 - y);
+			if (data[i] <= 0) return false;
+			System.arraycopy(data, 0, last, 0, 14);
+			if (undoTimes > 0) allowUndo = true;
+			int n = data[i];
+			data[i] = 0;
+			turnEnd = true;
+			while (n > 0) {
+				i = (i + 1) % 14;
+				if (i == 0 && !isPlayerA) continue;
+				if (i == 7 && isPlayerA) continue;
+				n--;
+				if (n == 0) {
+					if (i == 0 || i == 7) {
+						turnEnd = false;
+					} else if (data[i] == 0) {
+						int k = isPlayerA ? 0 : 7;
+						data[k] += 1 + data[14 - i];
+						data[14 - i] = 0;
+						data[i] = -1;
+					}
+				}
+				data[i]++;
+			}
+			if (checkGameEnd()) {
+				for (i = 1; i <= 6; i++) {
+					data[7] += data[i];
+					data[i] = 0;
+				}
+				for (i = 8; i <= 13; i++) {
+					data[0] += data[i];
+					data[i] = 0;
+				}
+			}
+			return true;
+		}
+
+		boolean checkGameEnd() {
+			boolean empty = true;
+			for (int i = 1; i <= 6; i++) {
+				if (data[i] > 0) empty = false;
+			}
+			if (empty) return true;
+			empty = true;
+			for (int i = 8; i <= 13; i++) {
+				if (data[i] > 0) empty = false;
+			}
+			return empty;
+		}
+
+		void nextPlayer() {
+			isPlayerA = !isPlayerA;
+			allowUndo = false;
+			undoTimes = 3;
+			turnEnd = false;
+		}
+
+		boolean undoATurn() {
+			if (!allowUndo) return false;
+			allowUndo = false;
+			undoTimes--;
+			turnEnd = false;
+			System.arraycopy(last, 0, data, 0, 14);
+			return true;
+		}
+	}
+
+	/**
+	 * One thread's game, oracle and the inputs of the current batch
+	 */
+	private static class Runner {
+		long seed;
+		SplittableRandom random;
+		DataModel game = new DataModel();
+		Oracle oracle = new Oracle();
+		int stones;
+		int[] board = new int[14];
+		int[] beforeMove = new int[14];
+		// The inputs of the batch, to replay it when the oracle disagrees at the end.
+		int[] ops;
+		int opCount;
+		ByteBuffer batchStart = ByteBuffer.allocate(DataModel.STATE_BYTES);
+		Oracle oracleStart = new Oracle();
+		int stonesStart;
+		long step;
+
+		Runner(long seed, int batch) {
+			this.seed = seed;
+			random = new SplittableRandom(seed);
+			ops = new int[batch];
+		}
+
+		/**
+		 * Picks an input: mostly moves of the player to move, sometimes an invalid one
+		 */
+		int nextOp() {
+			if (stones == 0 || game.checkGameEnd()) {
+				return INIT | (1 + random.nextInt(10)) << 4;
+			}
+			int r = random.nextInt(100);
+			if (r < 8) return UNDO;
+			if (game.isTurnEnd() || r < 10) return r < 95 ? NEXT : UNDO;
+			int x = r < 12 ? random.nextInt(2) : game.getIsPlayerA() ? 0 : 1;
+			return MOVE | x << 4 | random.nextInt(6) << 8;
+		}
+
+		/**
+		 * Applies an input to the game and, if asked, to the oracle
+		 * @return true if the game accepted the input
+		 */
+		boolean apply(int op, boolean withOracle) {
+			switch (op & 15) {
+			case INIT:
+				// init keeps the turn state, so end the turn first; an undo must not reach into the last game.
+				stones = op >> 4;
+				game.nextPlayer();
+				game.init(stones);
+				if (withOracle) {
+					oracle.nextPlayer();
+					oracle.init(stones);
+				}
+				return true;
+			case NEXT:
+				game.nextPlayer();
+				if (withOracle) oracle.nextPlayer();
+				return true;
+			case UNDO: {
+				boolean accepted = game.undoATurn();
+				if (withOracle && oracle.undoATurn() != accepted) {
+					throw new IllegalStateException("undoATurn returned " + accepted + ", the oracle disagrees");
+				}
+				return accepted;
+			}
+			default: {
+				int x = (op >> 4) & 15;
+				int y = op >> 8;
+				game.copyBoard(beforeMove);
+				boolean accepted = game.distributeStones(x, y);
+				if (withOracle && oracle.distributeStones(x, y) != accepted) {
+					throw new IllegalStateException("distributeStones(" + x + ", " + y + ") returned " + accepted
+							+ ", the oracle disagrees");
+				}
+				return accepted;
+			}
+			}
+		}
+
+		/**
+		 * Checks the invariants that only need the board
+		 */
+		void checkBoard(int op, boolean accepted, int[] lastMoveBoard) {
+			game.copyBoard(board);
+			int total = 0;
+			for (int i = 0; i < 14; i++) {
+				if (board[i] < 0) throw new IllegalStateException("pit " + i + " is negative");
+				total += board[i];
+			}
+			if (total != 12 * stones) {
+				throw new IllegalStateException(total + " stones instead of " + 12 * stones);
+			}
+			if ((op & 15) == UNDO && accepted) {
+				for (int i = 0; i < 14; i++) {
+					if (board[i] != lastMoveBoard[i]) {
+						throw new IllegalStateException("undo did not restore pit " + i);
+					}
+				}
+			}
+			if (game.checkGameEnd()) {
+				for (int i = 1; i < 14; i++) {
+					if (i != 7 && board[i] != 0) {
+						throw new IllegalStateException("game ended with stones left in pit " + i);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Compares the complete state with the oracle
+		 */
+		void checkOracle() {
+			game.copyBoard(board);
+			for (int i = 0; i < 14; i++) {
+				if (board[i] != oracle.data[i]) {
+					throw new IllegalStateException("pit " + i + " is " + board[i] + ", the oracle has " + oracle.data[i]);
+				}
+			}
+			if (game.getIsPlayerA() != oracle.isPlayerA || game.isTurnEnd() != oracle.turnEnd
+					|| game.allowUndo() != oracle.allowUndo || game.getUndoTimes() != oracle.undoTimes) {
+				throw new IllegalStateException("turn state differs from the oracle");
+			}
+		}
+	}
+
+	/**
+	 * Runs batches until the shared step budget is used up or a check fails
+	 * @return a description of the failure, null if every check passed
+	 */
+	private static String run(Runner r, AtomicLong budget, int batch, boolean every, AtomicBoolean failed) {
+		int[] lastMoveBoard = new int[14];
+		while (!failed.get() && budget.getAndAdd(-batch) > 0) {
+			r.game.writeState(r.batchStart, 0);
+			copy(r.oracle, r.oracleStart);
+			r.stonesStart = r.stones;
+			int[] lastStart = lastMoveBoard.clone();
+			r.opCount = 0;
+			try {
+				for (int s = 0; s < batch; s++) {
+					int op = r.nextOp();
+					r.ops[r.opCount++] = op;
+					boolean accepted = r.apply(op, every);
+					if ((op & 15) == MOVE && accepted) {
+						System.arraycopy(r.beforeMove, 0, lastMoveBoard, 0, 14);
+					}
+					r.checkBoard(op, accepted, lastMoveBoard);
+					if (every) r.checkOracle();
+				}
+				if (!every) {
+					// Bring the oracle up to date in one tight loop, then compare once.
+					for (int s = 0; s < r.opCount; s++) {
+						applyOracle(r.oracle, r.ops[s]);
+					}
+					r.checkOracle();
+				}
+			} catch (RuntimeException e) {
+				failed.set(true);
+				return describe(r, lastStart, e);
+			}
+			r.step += batch;
+		}
+		return null;
+	}
+
+	private static void applyOracle(Oracle o, int op) {
+		switch (op & 15) {
+		case INIT:
+			o.nextPlayer();
+			o.init(op >> 4);
+			break;
+		case NEXT: o.nextPlayer(); break;
+		case UNDO: o.undoATurn(); break;
+		default: o.distributeStones((op >> 4) & 15, op >> 8);
+		}
+	}
+
+	private static void copy(Oracle from, Oracle to) {
+		System.arraycopy(from.data, 0, to.data, 0, 14);
+		System.arraycopy(from.last, 0, to.last, 0, 14);
+		to.isPlayerA = from.isPlayerA;
+		to.allowUndo = from.allowUndo;
+		to.turnEnd = from.turnEnd;
+		to.undoTimes = from.undoTimes;
+	}
+
+	/**
+	 * Replays the failed batch with every check after every step and names the first bad step
+	 */
+	private static String describe(Runner r, int[] lastStart, RuntimeException first) {
+		r.game.readState(r.batchStart, 0);
+		copy(r.oracleStart, r.oracle);
+		r.stones = r.stonesStart;
+		int[] lastMoveBoard = lastStart.clone();
+		StringBuilder inputs = new StringBuilder();
+		for (int s = 0; s < r.opCount; s++) {
+			int op = r.ops[s];
+			inputs.append(' ').append(name(op));
+			try {
+				boolean accepted = r.apply(op, true);
+				if ((op & 15) == MOVE && accepted) {
+					System.arraycopy(r.beforeMove, 0, lastMoveBoard, 0, 14);
+				}
+				r.checkBoard(op, accepted, lastMoveBoard);
+				r.checkOracle();
+			} catch (RuntimeException e) {
+				return String.format("seed %d, step %d: %s%n  inputs since step %d:%s", r.seed, r.step + s,
+						e, r.step, inputs);
+			}
+		}
+		return String.format("seed %d, batch at step %d: %s (not reproduced step by step)", r.seed, r.step,
+				first);
+	}
+
+	private static String name(int op) {
+		switch (op & 15) {
+		case INIT: return "I" + (op >> 4);
+		case NEXT: return "N";
+		case UNDO: return "U";
+		default: return (((op >> 4) & 15) == 0 ? "A" : "B") + (op >> 8);
+		}
+	}
+
+	/**
+	 * Runs the tool
+	 * @param args the command line, see the class description
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long steps = 100_000_000L;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int batch = 4096;
+		long seed = System.nanoTime();
+		boolean every = false;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-steps": steps = Long.parseLong(args[++i]); break;
+			case "-threads": threads = Integer.parseInt(args[++i]); break;
+			case "-batch": batch = Integer.parseInt(args[++i]); break;
+			case "-seed": seed = Long.parseLong(args[++i]); break;
+			case "-every": every = true; break;
+			default:
+				System.err.println("Usage: StressHarness [-steps N] [-threads N] [-batch N] [-seed N] [-every]");
+				System.exit(2);
+			}
+		}
+		AtomicLong budget = new AtomicLong(steps);
+		AtomicBoolean failed = new AtomicBoolean();
+		List<Runner> runners = new ArrayList<>();
+		List<Thread> workers = new ArrayList<>();
+		String[] failures = new String[threads];
+		for (int t = 0; t < threads; t++) {
+			Runner r = new Runner(seed + t, batch);
+			runners.add(r);
+			int index = t;
+			int b = batch;
+			boolean e = every;
+			Thread worker = new Thread(() -> failures[index] = run(r, budget, b, e, failed), "StressHarness " + t);
+			workers.add(worker);
+		}
+		long start = System.nanoTime();
+		for (Thread w : workers) w.start();
+		for (Thread w : workers) {
+			while (w.isAlive()) {
+				w.join(10000);
+				if (w.isAlive()) {
+					long done = 0;
+					for (Runner r : runners) done += r.step;
+					System.out.printf("%,d steps, %.1f M steps/s%n", done, done * 1e3 / (System.nanoTime() - start));
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long done = 0;
+		for (Runner r : runners) done += r.step;
+		System.out.printf("%,d steps in %.1f s (%.1f M steps/s) with seed %d%n", done, seconds, done / seconds / 1e6, seed);
+		for (String failure : failures) {
+			if (failure != null) {
+				System.out.println("FAILED " + failure);
+				System.exit(1);
+			}
+		}
+		System.out.println("All invariants held");
+	}
+}
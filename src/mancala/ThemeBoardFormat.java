@@ -0,0 +1,266 @@
+package mancala;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Concrete Strategy class ThemeBoardFormat implements BoardFormat strategy
+ * from a properties file instead of code, so new themes need no recompile.
+ * The pit shapes are computed once when the file is loaded, and every file is
+ * only loaded once, so BoardPanel gets the same instance and reuses its geometry.
+ * A theme is immutable: its values are checked when it is loaded and never change,
+ * and callers get copies of the shared pit shapes.
+ * @author TeamNemo
+ *
+ */
+public class ThemeBoardFormat implements BoardFormat {
+	private static final Map<Path, ThemeBoardFormat> loaded = new HashMap<>();
+	private final String name;
+	private final String background;
+	private final String pitShape;
+	private final int cornerRadius;
+	private final int width;
+	private final int height;
+	private final int mancalaLeft;
+	private final int mancalaTop;
+	private final int mancalaWidth;
+	private final int mancalaHeight;
+	private final int pitLeft;
+	private final int pitTop;
+	private final int pitWidth;
+	private final int pitHeight;
+	private final int pitBorderX;
+	private final int pitBorderY;
+	// Shapes of the 14 pits keyed by their bounds; only copies leave this class.
+	private final Map<Rectangle, RectangularShape> shapes;
+
+	/**
+	 * Returns the theme stored in the given file, loading it on first use
+	 * @param file the properties file of the theme
+	 * @return the theme, the same instance for every call with the same file
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a value is missing or invalid
+	 */
+	public static synchronized ThemeBoardFormat load(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		ThemeBoardFormat theme = loaded.get(key);
+		if (theme == null) {
+			Properties p = new Properties();
+			try (Reader in = Files.newBufferedReader(key)) {
+				p.load(in);
+			}
+			theme = new ThemeBoardFormat(p, key.getParent());
+			loaded.put(key, theme);
+		}
+		return theme;
+	}
+
+	/**
+	 * Constructor for the ThemeBoardFormat class. Reads the layout and computes the pit shapes.
+	 * @param p the properties of the theme
+	 * @param dir the directory that the background path is relative to
+	 * @throws IllegalArgumentException if a value is missing or invalid, or a size or radius is not positive
+	 */
+	private ThemeBoardFormat(Properties p, Path dir) {
+		name = p.getProperty("name", "Custom Style");
+		String img = required(p, "background");
+		background = dir == null ? img : dir.resolve(img).toString();
+		pitShape = p.getProperty("pitShape", "ellipse");
+		if (!pitShape.equals("ellipse") && !pitShape.equals("roundRect") && !pitShape.equals("rect")) {
+			throw new IllegalArgumentException("Unknown pitShape: " + pitShape);
+		}
+		cornerRadius = positive(p, "cornerRadius", "15");
+		width = positive(p, "width", "1280");
+		height = positive(p, "height", "500");
+		mancalaLeft = intValue(p, "mancalaLeft", null);
+		mancalaTop = intValue(p, "mancalaTop", null);
+		mancalaWidth = positive(p, "mancalaWidth", null);
+		mancalaHeight = positive(p, "mancalaHeight", null);
+		pitLeft = intValue(p, "pitLeft", null);
+		pitTop = intValue(p, "pitTop", null);
+		pitWidth = positive(p, "pitWidth", null);
+		pitHeight = positive(p, "pitHeight", null);
+		pitBorderX = intValue(p, "pitBorderX", null);
+		pitBorderY = intValue(p, "pitBorderY", null);
+
+		Map<Rectangle, RectangularShape> pits = new HashMap<>();
+		addShape(pits, mancalaLeft, mancalaTop, mancalaWidth, mancalaHeight);
+		addShape(pits, width - mancalaLeft - mancalaWidth, mancalaTop, mancalaWidth, mancalaHeight);
+		for (int i = 0; i < 6; i++) {
+			int x = pitLeft + i * (pitWidth + pitBorderX);
+			addShape(pits, x, pitTop, pitWidth, pitHeight);
+			addShape(pits, x, pitTop + pitHeight + pitBorderY, pitWidth, pitHeight);
+		}
+		shapes = Collections.unmodifiableMap(pits);
+	}
+
+	private static String required(Properties p, String key) {
+		String value = p.getProperty(key);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing theme value: " + key);
+		}
+		return value.trim();
+	}
+
+	private static int intValue(Properties p, String key, String defaultValue) {
+		String value = defaultValue == null ? required(p, key) : p.getProperty(key, defaultValue).trim();
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid theme value for " + key + ": " + value);
+		}
+	}
+
+	private static int positive(Properties p, String key, String defaultValue) {
+		int value = intValue(p, key, defaultValue);
+		if (value <= 0) {
+			throw new IllegalArgumentException("Theme value for " + key + " must be positive: " + value);
+		}
+		return value;
+	}
+
+	private void addShape(Map<Rectangle, RectangularShape> pits, int x, int y, int w, int h) {
+		pits.put(new Rectangle(x, y, w, h), createShape(x, y, w, h));
+	}
+
+	private RectangularShape createShape(int x, int y, int w, int h) {
+		if (pitShape.equals("roundRect")) {
+			return new RoundRectangle2D.Double(x, y, w, h, cornerRadius, cornerRadius);
+		} else if (pitShape.equals("rect")) {
+			return new Rectangle2D.Double(x, y, w, h);
+		} else {
+			return new Ellipse2D.Double(x, y, w, h);
+		}
+	}
+
+	/**
+	 * Returns the precomputed shape of the pit relative to this format
+	 * @return a copy of the shape of the pit relative to this format, so changing it affects no other board
+	 */
+	@Override
+	public Shape formatPits(PitShape ps) {
+		RectangularShape s = shapes.get(new Rectangle(ps.getX(), ps.getY(), ps.getWidth(), ps.getHeight()));
+		return s != null ? (Shape) s.clone() : createShape(ps.getX(), ps.getY(), ps.getWidth(), ps.getHeight());
+	}
+
+	/**
+	 * Returns the background image for this format
+	 * @return the image for this format
+	 */
+	@Override
+	public Image backgroundImg() {
+		return Toolkit.getDefaultToolkit().getImage(background);
+	}
+
+	/**
+	 * Returns the name of this format.
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns width of the board.
+	 */
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns height of the board.
+	 */
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the left position of mancala A.
+	 */
+	@Override
+	public int getMancalaLeft() {
+		return mancalaLeft;
+	}
+
+	/**
+	 * Returns the top position of the mancala.
+	 */
+	@Override
+	public int getMancalaTop() {
+		return mancalaTop;
+	}
+
+	/**
+	 * Returns the width of the mancala.
+	 */
+	@Override
+	public int getMancalaWidth() {
+		return mancalaWidth;
+	}
+
+	/**
+	 * Returns the height of the mancala.
+	 */
+	@Override
+	public int getMancalaHeight() {
+		return mancalaHeight;
+	}
+
+	/**
+	 * Returns the left position of the first pit.
+	 */
+	@Override
+	public int getPitLeft() {
+		return pitLeft;
+	}
+
+	/**
+	 * Returns the top position of the first pit.
+	 */
+	@Override
+	public int getPitTop() {
+		return pitTop;
+	}
+
+	/**
+	 * Returns the width of the pit.
+	 */
+	@Override
+	public int getPitWidth() {
+		return pitWidth;
+	}
+
+	/**
+	 * Returns the height of the pit.
+	 */
+	@Override
+	public int getPitHeight() {
+		return pitHeight;
+	}
+
+	/**
+	 * Returns the horizontal border of the pit.
+	 */
+	@Override
+	public int getPitBorderX() {
+		return pitBorderX;
+	}
+
+	/**
+	 * Returns the vertical border of the pit.
+	 */
+	@Override
+	public int getPitBorderY() {
+		return pitBorderY;
+	}
+}